@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import org.folg.names.score.Codes;
+import org.folg.names.score.CodesDictionary;
+import org.folg.names.score.FeaturesGenerator;
+import org.folg.names.search.Searcher;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Build the codes dictionary used by FeaturesGenerator to skip letter-to-sound for known names.
+ * Put the result on the classpath as surnameCodes.bin or givennameCodes.bin, or memory-map it with CodesDictionary.map
+ */
+public class CodesDictionaryBuilder {
+   private static Logger logger = Logger.getLogger("org.folg.names.eval");
+   private static final int NAMES_PER_TASK = 1000;
+
+   @Option(name="-i", required=false, usage="names in, one per line (uses the common names if not provided)")
+   private File namesFile = null;
+
+   @Option(name="-o", required=true, usage="dictionary out")
+   private File dictionaryFile = null;
+
+   @Option(name="-s", required=false, usage="is surname")
+   private boolean isSurname = false;
+
+   @Option(name="-n", required=false, usage="number of threads (defaults to number of processors)")
+   private int numThreads = Runtime.getRuntime().availableProcessors();
+
+   // FeaturesGenerator isn't thread-safe, so each thread gets its own
+   private final ThreadLocal<FeaturesGenerator> featuresGenerators = new ThreadLocal<FeaturesGenerator>() {
+      @Override
+      protected FeaturesGenerator initialValue() {
+         return new FeaturesGenerator(isSurname);
+      }
+   };
+
+   private SortedSet<String> readNames() throws IOException {
+      SortedSet<String> names = new TreeSet<String>();
+      if (namesFile == null) {
+         names.addAll((isSurname ? Searcher.getSurnameInstance() : Searcher.getGivennameInstance()).getCommonNames());
+      }
+      else {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(namesFile), "UTF8"));
+         try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+               line = line.trim();
+               if (line.length() > 0) {
+                  names.add(line);
+               }
+            }
+         }
+         finally {
+            reader.close();
+         }
+      }
+      return names;
+   }
+
+   private Future<List<Codes>> submit(ExecutorService executor, final List<String> names) {
+      return executor.submit(new Callable<List<Codes>>() {
+         public List<Codes> call() {
+            FeaturesGenerator featuresGenerator = featuresGenerators.get();
+            List<Codes> codes = new ArrayList<Codes>(names.size());
+            for (String name : names) {
+               // don't read the codes back out of an existing dictionary
+               codes.add(featuresGenerator.computeCodes(name));
+            }
+            return codes;
+         }
+      });
+   }
+
+   private void doMain() throws IOException {
+      List<String> names = new ArrayList<String>(readNames());
+      logger.info("Computing codes for "+names.size()+" names");
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      List<Codes> codes = new ArrayList<Codes>(names.size());
+      OutputStream out = null;
+      try {
+         List<Future<List<Codes>>> futures = new ArrayList<Future<List<Codes>>>();
+         for (int i = 0; i < names.size(); i += NAMES_PER_TASK) {
+            futures.add(submit(executor, names.subList(i, Math.min(i + NAMES_PER_TASK, names.size()))));
+         }
+         for (Future<List<Codes>> future : futures) {
+            codes.addAll(future.get());
+         }
+
+         out = new FileOutputStream(dictionaryFile);
+         CodesDictionary.write(out, isSurname, names, codes);
+      }
+      catch (InterruptedException e) {
+         throw new IOException("Interrupted");
+      }
+      catch (ExecutionException e) {
+         throw new RuntimeException("Error computing codes", e.getCause());
+      }
+      finally {
+         executor.shutdownNow();
+         if (out != null) {
+            out.close();
+         }
+      }
+   }
+
+   public static void main(String[] args) throws IOException {
+      CodesDictionaryBuilder self = new CodesDictionaryBuilder();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
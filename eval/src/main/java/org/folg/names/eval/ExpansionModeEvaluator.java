@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import org.folg.names.search.Searcher;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Compare search-time and index-time expansion on the common names:
+ * report how much the index grows against how much the query fan-out shrinks
+ */
+public class ExpansionModeEvaluator {
+   private static Logger logger = Logger.getLogger("org.folg.names.eval");
+
+   @Option(name="-t", required=false, usage="table (csv) in (uses default if not provided)")
+   private File tableFile = null;
+
+   @Option(name="-s", required=false, usage="surnames")
+   private boolean isSurname;
+
+   private static class Totals {
+      long indexTokens = 0;
+      long searchTokens = 0;
+      int maxIndexTokens = 0;
+      int maxSearchTokens = 0;
+
+      void add(int index, int search) {
+         indexTokens += index;
+         searchTokens += search;
+         maxIndexTokens = Math.max(maxIndexTokens, index);
+         maxSearchTokens = Math.max(maxSearchTokens, search);
+      }
+   }
+
+   private Totals count(Searcher searcher, List<String> names) {
+      Totals totals = new Totals();
+      for (String name : names) {
+         // the name itself is always indexed and searched
+         totals.add(1 + searcher.getAdditionalIndexTokens(name).size(), 1 + searcher.getAdditionalSearchTokens(name).size());
+      }
+      return totals;
+   }
+
+   private void print(String label, Totals totals, int cnt) {
+      System.out.println(label+": index tokens="+totals.indexTokens+" ("+String.format("%.2f", totals.indexTokens * 1.0 / cnt)+
+                         " per name, max "+totals.maxIndexTokens+") search tokens="+totals.searchTokens+
+                         " ("+String.format("%.2f", totals.searchTokens * 1.0 / cnt)+" per name, max "+totals.maxSearchTokens+")");
+   }
+
+   public void doMain() throws IOException {
+      Searcher searcher = isSurname ? Searcher.getSurnameInstance() : Searcher.getGivennameInstance();
+      if (tableFile != null) {
+         logger.info("Reading "+tableFile.getAbsolutePath());
+         searcher.readSimilarNames(new FileReader(tableFile));
+      }
+      List<String> names = new ArrayList<String>(searcher.getCommonNames());
+      Searcher.ExpansionMode savedMode = searcher.getExpansionMode();
+
+      try {
+         searcher.setExpansionMode(Searcher.ExpansionMode.SEARCH_TIME);
+         Totals searchTime = count(searcher, names);
+         searcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+         Totals indexTime = count(searcher, names);
+
+         System.out.println("Common names="+names.size());
+         print("Search-time expansion", searchTime, names.size());
+         print("Index-time expansion", indexTime, names.size());
+         System.out.println("Index growth="+String.format("%.2f", indexTime.indexTokens * 1.0 / searchTime.indexTokens)+
+                            "x, query fan-out reduction="+String.format("%.2f", searchTime.searchTokens * 1.0 / indexTime.searchTokens)+"x");
+      }
+      finally {
+         searcher.setExpansionMode(savedMode);
+      }
+   }
+
+   public static void main(String[] args) throws IOException {
+      ExpansionModeEvaluator self = new ExpansionModeEvaluator();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
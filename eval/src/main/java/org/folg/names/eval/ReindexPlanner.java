@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import org.folg.names.score.Utils;
+import org.folg.names.search.Searcher;
+import org.folg.names.search.SearcherDiff;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Compare two versions of the similar-names table, code map, and (for surnames) basenames, and write the names whose index or search tokens changed.
+ * Each output line is tab-separated: index|search, name, old tokens, new tokens; or code, code.
+ * Records containing a name on an index line need to be reindexed.
+ */
+public class ReindexPlanner {
+   private static Logger logger = Logger.getLogger("org.folg.names.eval");
+
+   @Option(name="-os", required=true, usage="old similar names (csv) in")
+   private File oldSimilarNamesFile = null;
+
+   @Option(name="-oc", required=true, usage="old code map in")
+   private File oldCodeMapFile = null;
+
+   @Option(name="-ns", required=true, usage="new similar names (csv) in")
+   private File newSimilarNamesFile = null;
+
+   @Option(name="-nc", required=true, usage="new code map in")
+   private File newCodeMapFile = null;
+
+   @Option(name="-ob", required=false, usage="old surname basenames in (default basenames if not provided)")
+   private File oldBasenamesFile = null;
+
+   @Option(name="-nb", required=false, usage="new surname basenames in (default basenames if not provided)")
+   private File newBasenamesFile = null;
+
+   @Option(name="-o", required=false, usage="changes out (stdout if not provided)")
+   private File changesFile = null;
+
+   @Option(name="-s", required=false, usage="surnames")
+   private boolean isSurname;
+
+   @Option(name="-x", required=false, usage="use index-time expansion")
+   private boolean indexTimeExpansion;
+
+   private Searcher newSearcher(File similarNamesFile, File codeMapFile, File basenamesFile) throws IOException {
+      Reader similarNamesReader = null;
+      Reader codeMapReader = null;
+      Reader basenamesReader = null;
+      try {
+         similarNamesReader = new InputStreamReader(new FileInputStream(similarNamesFile), "UTF8");
+         codeMapReader = new InputStreamReader(new FileInputStream(codeMapFile), "UTF8");
+         if (isSurname && basenamesFile != null) {
+            basenamesReader = new InputStreamReader(new FileInputStream(basenamesFile), "UTF8");
+         }
+         Searcher searcher = Searcher.newInstance(isSurname, similarNamesReader, codeMapReader, basenamesReader);
+         if (indexTimeExpansion) {
+            searcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+         }
+         return searcher;
+      }
+      finally {
+         if (similarNamesReader != null) {
+            similarNamesReader.close();
+         }
+         if (codeMapReader != null) {
+            codeMapReader.close();
+         }
+         if (basenamesReader != null) {
+            basenamesReader.close();
+         }
+      }
+   }
+
+   private static String join(Collection<String> tokens) {
+      return Utils.join(" ", new TreeSet<String>(tokens));
+   }
+
+   public void doMain() throws IOException {
+      Searcher oldSearcher = newSearcher(oldSimilarNamesFile, oldCodeMapFile, oldBasenamesFile);
+      Searcher newSearcher = newSearcher(newSimilarNamesFile, newCodeMapFile, newBasenamesFile);
+
+      final PrintWriter changesWriter = (changesFile == null ?
+              new PrintWriter(new OutputStreamWriter(System.out, "UTF8")) :
+              new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(changesFile), "UTF8"))));
+      final int[] counts = new int[3];
+      try {
+         new SearcherDiff(oldSearcher, newSearcher).diff(new SearcherDiff.Listener() {
+            public void indexTokensChanged(String name, Collection<String> oldTokens, Collection<String> newTokens) {
+               changesWriter.println("index\t"+name+"\t"+join(oldTokens)+"\t"+join(newTokens));
+               counts[0]++;
+            }
+
+            public void searchTokensChanged(String name, Collection<String> oldTokens, Collection<String> newTokens) {
+               changesWriter.println("search\t"+name+"\t"+join(oldTokens)+"\t"+join(newTokens));
+               counts[1]++;
+            }
+
+            public void codeNamesChanged(String code) {
+               changesWriter.println("code\t"+code);
+               counts[2]++;
+            }
+         });
+      }
+      finally {
+         changesWriter.close();
+      }
+      logger.info("index changes="+counts[0]+" search changes="+counts[1]+" code changes="+counts[2]);
+   }
+
+   public static void main(String[] args) throws IOException {
+      ReindexPlanner self = new ReindexPlanner();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import com.wcohen.ss.Levenstein;
+import org.folg.names.score.BitParallelLevenstein;
+import org.folg.names.score.CandidateSet;
+import org.folg.names.score.Codes;
+import org.folg.names.score.Features;
+import org.folg.names.score.FeaturesGenerator;
+import org.folg.names.score.FeaturesScorer;
+import org.folg.names.score.Nysiis;
+import org.folg.names.score.RegexNysiis;
+import org.folg.names.score.Scorer;
+import org.folg.names.search.Searcher;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * Measure the time and memory allocated to score a name pair, comparing scoring from scratch
+ * (computing codes and allocating the tables for each pair), scoring with cached codes but new tables,
+ * and Scorer, which caches codes and reuses per-thread buffers.
+ * Also compare scoring names one pair at a time against scoring them against a CandidateSet,
+ * SecondString's Levenstein against BitParallelLevenstein, and the regular-expression Nysiis encoder against Nysiis.
+ * Allocation is measured with the HotSpot per-thread allocation counter when the JVM supports it
+ */
+public class ScorerBenchmark {
+   @Option(name="-s", required=false, usage="surnames")
+   private boolean isSurname = false;
+
+   @Option(name="-n", required=false, usage="number of pairs to score per round (default 100000)")
+   private int numPairs = 100000;
+
+   @Option(name="-r", required=false, usage="number of rounds (default 5); the first round warms up")
+   private int numRounds = 5;
+
+   private interface PairScorer {
+      public double score(String name1, String name2);
+   }
+
+   // returns -1 if the JVM can't measure allocation
+   private static long getAllocatedBytes() {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+         com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+         if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+            return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+         }
+      }
+      return -1;
+   }
+
+   private void run(String label, PairScorer pairScorer, String[] names1, String[] names2) {
+      double total = 0;
+      for (int round = 0; round < numRounds; round++) {
+         long bytes = getAllocatedBytes();
+         long time = System.nanoTime();
+         for (int i = 0; i < numPairs; i++) {
+            total += pairScorer.score(names1[i], names2[i]);
+         }
+         time = System.nanoTime() - time;
+         bytes = getAllocatedBytes() - bytes;
+         if (round > 0) {
+            System.out.println(label+": "+String.format("%.0f", time * 1.0 / numPairs)+" ns/pair, "+
+                               (bytes < 0 ? "n/a" : String.format("%.1f", bytes * 1.0 / numPairs))+" bytes/pair");
+         }
+      }
+      // keep the scores live
+      if (Double.isNaN(total)) {
+         System.out.println(total);
+      }
+   }
+
+   private void runOneAgainstMany(Scorer scorer, List<String> names) {
+      // score queries against the same candidates, like SimilarNameGenerator does with the common names
+      int numCandidates = Math.min(names.size(), 1000);
+      int numQueries = Math.max(1, numPairs / numCandidates);
+      List<String> shuffled = new ArrayList<String>(names);
+      Collections.shuffle(shuffled, new Random(0));
+      String[] candidateNames = shuffled.subList(0, numCandidates).toArray(new String[numCandidates]);
+      CandidateSet candidates = scorer.newCandidateSet(candidateNames);
+      long pairs = (long)numQueries * numCandidates;
+      double total = 0;
+      for (int round = 0; round < numRounds; round++) {
+         long time = System.nanoTime();
+         for (int q = 0; q < numQueries; q++) {
+            for (String candidateName : candidateNames) {
+               total += scorer.scoreNamePair(shuffled.get(q), candidateName);
+            }
+         }
+         long pairTime = System.nanoTime() - time;
+         time = System.nanoTime();
+         for (int q = 0; q < numQueries; q++) {
+            double[] scores = scorer.scoreAgainst(shuffled.get(q), candidates);
+            total += scores[0];
+         }
+         long candidateSetTime = System.nanoTime() - time;
+         if (round > 0) {
+            System.out.println("One against "+numCandidates+": "+String.format("%.0f", pairTime * 1.0 / pairs)+" ns/pair with scoreNamePair, "+
+                               String.format("%.0f", candidateSetTime * 1.0 / pairs)+" ns/pair with scoreAgainst");
+         }
+      }
+      // keep the scores live
+      if (Double.isNaN(total)) {
+         System.out.println(total);
+      }
+   }
+
+   private void doMain() {
+      List<String> names = new ArrayList<String>((isSurname ? Searcher.getSurnameInstance() : Searcher.getGivennameInstance()).getCommonNames());
+      Collections.sort(names);
+      // score names against nearby names, like scoring a name's candidates; use a fixed seed so runs are comparable
+      Random random = new Random(0);
+      String[] names1 = new String[numPairs];
+      String[] names2 = new String[numPairs];
+      for (int i = 0; i < numPairs; i++) {
+         int pos = random.nextInt(names.size());
+         names1[i] = names.get(pos);
+         names2[i] = names.get(Math.min(names.size()-1, pos+1+random.nextInt(20)));
+      }
+
+      final FeaturesGenerator featuresGenerator = new FeaturesGenerator(isSurname);
+      final FeaturesScorer featuresScorer = new FeaturesScorer(isSurname);
+      run("From scratch", new PairScorer() {
+         public double score(String name1, String name2) {
+            Codes codes1 = featuresGenerator.computeCodes(name1);
+            Codes codes2 = featuresGenerator.computeCodes(name2);
+            Features features = new Features();
+            featuresGenerator.setFeatures(name1, codes1, name2, codes2, features);
+            return featuresScorer.score(features);
+         }
+      }, names1, names2);
+
+      final Scorer scorer = isSurname ? Scorer.getSurnameInstance() : Scorer.getGivennameInstance();
+      run("Cached codes, new tables", new PairScorer() {
+         public double score(String name1, String name2) {
+            Features features = new Features();
+            featuresGenerator.setFeatures(name1, scorer.getCodes(name1), name2, scorer.getCodes(name2), features);
+            return featuresScorer.score(features);
+         }
+      }, names1, names2);
+
+      run("Scorer", new PairScorer() {
+         public double score(String name1, String name2) {
+            return scorer.scoreNamePair(name1, name2);
+         }
+      }, names1, names2);
+      System.out.println("Codes cache hits="+scorer.getCodesCache().getHitCount()+" misses="+scorer.getCodesCache().getMissCount());
+
+      runOneAgainstMany(scorer, names);
+
+      final Levenstein levenstein = new Levenstein();
+      run("SecondString Levenstein", new PairScorer() {
+         public double score(String name1, String name2) {
+            return levenstein.score(name1, name2);
+         }
+      }, names1, names2);
+      final BitParallelLevenstein bitParallelLevenstein = new BitParallelLevenstein();
+      run("Bit-parallel Levenstein", new PairScorer() {
+         public double score(String name1, String name2) {
+            return bitParallelLevenstein.score(name1, name2);
+         }
+      }, names1, names2);
+
+      // encode both names of each pair
+      final RegexNysiis regexNysiis = new RegexNysiis();
+      run("Regex Nysiis", new PairScorer() {
+         public double score(String name1, String name2) {
+            return regexNysiis.encode(name1).length() + regexNysiis.encode(name2).length();
+         }
+      }, names1, names2);
+      final Nysiis nysiis = new Nysiis();
+      run("Nysiis", new PairScorer() {
+         public double score(String name1, String name2) {
+            return nysiis.encode(name1).length() + nysiis.encode(name2).length();
+         }
+      }, names1, names2);
+   }
+
+   public static void main(String[] args) {
+      ScorerBenchmark self = new ScorerBenchmark();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
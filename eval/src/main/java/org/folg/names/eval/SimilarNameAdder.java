@@ -75,8 +75,7 @@ public class SimilarNameAdder {
                   // Test only otherNames that this name is less than
                   // We'll run SimilarNameAugmenter later to add the reverse relationships
                   if (name.compareTo(otherName) < 0) {
-                     double score = scorer.scoreNamePair(name, otherName);
-                     if (score >= threshold) {
+                     if (scorer.scoreNamePairAtLeast(name, otherName, threshold) != Scorer.BELOW_THRESHOLD) {
                         similarNames.add(otherName);
                      }
                   }
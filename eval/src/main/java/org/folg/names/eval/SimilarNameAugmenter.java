@@ -18,6 +18,7 @@ package org.folg.names.eval;
 
 import org.folg.names.score.Utils;
 import org.folg.names.search.Normalizer;
+import org.folg.names.search.Searcher;
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.StringEncoder;
 import org.apache.commons.codec.language.Soundex;
@@ -153,21 +154,26 @@ public class SimilarNameAugmenter {
             // line is "name","similar names"
             String[] fields = line.split(",",2);
             String name = fields[0].substring(1, fields[0].length() - 1);
-            Set<String> similarNames = new TreeSet<String>();
+            // similar name -> token, which keeps any precomputed score
+            Map<String,String> similarNames = new TreeMap<String,String>();
             if (fields[1].length() > 2) {
-               similarNames.addAll(Arrays.asList(fields[1].substring(1, fields[1].length() - 1).split(" ")));
+               for (String token : fields[1].substring(1, fields[1].length() - 1).split(" ")) {
+                  similarNames.put(Searcher.getTokenName(token), token);
+               }
             }
 
             // add additional similar names
             Set<String> names = namesToAdd.get(name);
             if (names != null) {
                for (String similarName : names) {
-                  similarNames.add(similarName);
+                  if (!similarNames.containsKey(similarName)) {
+                     similarNames.put(similarName, similarName);
+                  }
                }
             }
 
             // write line
-            similarNamesWriter.println("\""+name+"\",\""+ Utils.join(" ", similarNames)+"\"");
+            similarNamesWriter.println("\""+name+"\",\""+ Utils.join(" ", similarNames.values())+"\"");
          }
       }
       catch (IOException e) {
@@ -18,6 +18,7 @@ package org.folg.names.eval;
 
 import org.folg.names.score.Scorer;
 import org.folg.names.score.Utils;
+import org.folg.names.search.Searcher;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
@@ -52,7 +53,7 @@ public class SimilarNameRemover {
        scorer = isSurname ? Scorer.getSurnameInstance() : Scorer.getGivennameInstance();
    }
 
-   private String getNameWithMostSimilarNames(Map<String,Set<String>> similarNamesMap) {
+   private String getNameWithMostSimilarNames(Map<String,Map<String,String>> similarNamesMap) {
       String result = null;
       int maxNames = 0;
       for (String name : similarNamesMap.keySet()) {
@@ -65,12 +66,17 @@ public class SimilarNameRemover {
       return result;
    }
 
-   private Set<String> getLeastSimilarNames(String name, Set<String> similarNames, int cnt) {
+   private Set<String> getLeastSimilarNames(String name, Map<String,String> similarNames, int cnt) {
       Set<String> leastSimilarNames = new HashSet<String>();
 
+      // use the precomputed scores where the file has them
       Map<String,Double> nameScores = new HashMap<String,Double>();
-      for (String similarName : similarNames) {
-         nameScores.put(similarName, scorer.scoreNamePair(name, similarName));
+      for (Map.Entry<String,String> entry : similarNames.entrySet()) {
+         double score = Searcher.getTokenScore(entry.getValue());
+         if (Double.isNaN(score)) {
+            score = scorer.scoreNamePair(name, entry.getKey());
+         }
+         nameScores.put(entry.getKey(), score);
       }
 
       while (leastSimilarNames.size() < cnt) {
@@ -96,7 +102,8 @@ public class SimilarNameRemover {
    private void doMain() {
       BufferedReader similarNamesReader = null;
       PrintWriter similarNamesWriter = null;
-      Map<String,Set<String>> similarNamesMap = new LinkedHashMap<String, Set<String>>();
+      // name -> similar name -> token, which keeps any precomputed score
+      Map<String,Map<String,String>> similarNamesMap = new LinkedHashMap<String, Map<String,String>>();
 
       try {
          similarNamesReader = new BufferedReader(new FileReader(similarNamesInFile));
@@ -108,9 +115,11 @@ public class SimilarNameRemover {
             // line is "name","similar names"
             String[] fields = line.split(",", 2);
             String name = fields[0].substring(1, fields[0].length() - 1);
-            Set<String> similarNames = new TreeSet<String>();
+            Map<String,String> similarNames = new TreeMap<String,String>();
             if (fields[1].length() > 2) {
-               similarNames.addAll(Arrays.asList(fields[1].substring(1, fields[1].length() - 1).split(" ")));
+               for (String token : fields[1].substring(1, fields[1].length() - 1).split(" ")) {
+                  similarNames.put(Searcher.getTokenName(token), token);
+               }
             }
             similarNamesMap.put(name, similarNames);
          }
@@ -118,18 +127,18 @@ public class SimilarNameRemover {
          // greedily remove names above threshold
          while (true) {
             String name = getNameWithMostSimilarNames(similarNamesMap);
-            Set<String> similarNames = similarNamesMap.get(name);
+            Map<String,String> similarNames = similarNamesMap.get(name);
             if (similarNames.size() <= namesToKeep) {
                break;
             }
             Set<String> notSimilarNames = getLeastSimilarNames(name, similarNames, similarNames.size() - namesToKeep);
             for (String notSimilarName : notSimilarNames) {
                similarNames.remove(notSimilarName);
-               Set<String> notSimilarNameSimilarNames = similarNamesMap.get(notSimilarName);
+               Map<String,String> notSimilarNameSimilarNames = similarNamesMap.get(notSimilarName);
                if (notSimilarNameSimilarNames == null) {
                   logger.warning("Not found: "+notSimilarName+" for name="+name);
                }
-               if (!notSimilarNameSimilarNames.remove(name)) {
+               if (notSimilarNameSimilarNames.remove(name) == null) {
                   logger.warning("Name "+name+" not found in "+notSimilarName);
                }
             }
@@ -137,7 +146,7 @@ public class SimilarNameRemover {
 
          // write similar names
          for (String name : similarNamesMap.keySet()) {
-            similarNamesWriter.println("\""+name+"\",\""+ Utils.join(" ", similarNamesMap.get(name))+"\"");
+            similarNamesWriter.println("\""+name+"\",\""+ Utils.join(" ", similarNamesMap.get(name).values())+"\"");
          }
       }
       catch (IOException e) {
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import org.folg.names.score.Scorer;
+import org.folg.names.search.Searcher;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Add a precomputed score to each name in a similar-names file, so Searcher can rank similar names without scoring them.
+ * Lines are scored in parallel and written in their original order; each similar name becomes name:score
+ */
+public class SimilarNameWeighter {
+   private static Logger logger = Logger.getLogger("org.folg.names.score");
+   private static final int LINES_PER_TASK = 500;
+
+   @Option(name="-i", required=true, usage="similar names in")
+   private File similarNamesInFile = null;
+
+   @Option(name="-o", required=true, usage="weighted similar names out")
+   private File similarNamesOutFile = null;
+
+   @Option(name="-s", required=false, usage="is surname")
+   private boolean isSurname = false;
+
+   @Option(name="-n", required=false, usage="number of threads (defaults to number of processors)")
+   private int numThreads = Runtime.getRuntime().availableProcessors();
+
+   private Scorer scorer;
+
+   private String weighLine(String line) {
+      // line is "name","similar names"
+      String[] fields = line.split(",", 2);
+      String name = fields[0].substring(1, fields[0].length() - 1);
+      StringBuilder buf = new StringBuilder();
+      if (fields.length == 2 && fields[1].length() > 2) {
+         for (String similarName : fields[1].substring(1, fields[1].length() - 1).split(" ")) {
+            // rescore names that already have a score
+            similarName = Searcher.getTokenName(similarName);
+            if (buf.length() > 0) {
+               buf.append(' ');
+            }
+            buf.append(similarName);
+            buf.append(':');
+            buf.append(String.format(Locale.ROOT, "%.4f", scorer.scoreNamePair(name, similarName)));
+         }
+      }
+      return "\""+name+"\",\""+buf.toString()+"\"";
+   }
+
+   private Future<List<String>> submit(ExecutorService executor, final List<String> lines) {
+      return executor.submit(new Callable<List<String>>() {
+         public List<String> call() {
+            List<String> weightedLines = new ArrayList<String>(lines.size());
+            for (String line : lines) {
+               weightedLines.add(weighLine(line));
+            }
+            return weightedLines;
+         }
+      });
+   }
+
+   private void write(Future<List<String>> future, PrintWriter writer) throws IOException {
+      try {
+         for (String line : future.get()) {
+            writer.println(line);
+         }
+      }
+      catch (InterruptedException e) {
+         throw new IOException("Interrupted");
+      }
+      catch (ExecutionException e) {
+         throw new RuntimeException("Error scoring names", e.getCause());
+      }
+   }
+
+   private void doMain() throws IOException {
+      scorer = isSurname ? Scorer.getSurnameInstance() : Scorer.getGivennameInstance();
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      BufferedReader similarNamesReader = null;
+      PrintWriter similarNamesWriter = null;
+
+      try {
+         similarNamesReader = new BufferedReader(new InputStreamReader(new FileInputStream(similarNamesInFile), "UTF8"));
+         similarNamesWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(similarNamesOutFile), "UTF8")));
+
+         // keep a bounded number of tasks in flight, and write their results in order
+         LinkedList<Future<List<String>>> pending = new LinkedList<Future<List<String>>>();
+         List<String> lines = new ArrayList<String>(LINES_PER_TASK);
+         String line;
+         int cnt = 0;
+         while ((line = similarNamesReader.readLine()) != null) {
+            lines.add(line);
+            if (lines.size() == LINES_PER_TASK) {
+               pending.add(submit(executor, lines));
+               lines = new ArrayList<String>(LINES_PER_TASK);
+               if (pending.size() > numThreads * 2) {
+                  write(pending.removeFirst(), similarNamesWriter);
+               }
+            }
+            if (++cnt % 10000 == 0) {
+               System.out.print(".");
+            }
+         }
+         if (lines.size() > 0) {
+            pending.add(submit(executor, lines));
+         }
+         while (pending.size() > 0) {
+            write(pending.removeFirst(), similarNamesWriter);
+         }
+         System.out.println();
+      }
+      finally {
+         executor.shutdownNow();
+         if (similarNamesReader != null) {
+            similarNamesReader.close();
+         }
+         if (similarNamesWriter != null) {
+            similarNamesWriter.close();
+         }
+      }
+   }
+
+   public static void main(String[] args) throws IOException {
+      SimilarNameWeighter self = new SimilarNameWeighter();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
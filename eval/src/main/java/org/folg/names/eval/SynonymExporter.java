@@ -0,0 +1,242 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import org.folg.names.search.Searcher;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Export the search and index tokens for every name in the tables, so an external search engine can expand names
+ * itself instead of calling Searcher for each query.
+ * Synonym files use the Solr/Lucene explicit-mapping format: name => name, token, token, ...
+ * Line-delimited JSON has one object per name: {"name":"...","search":[...],"index":[...]}
+ * Names that aren't in the tables are rare: index them under their Soundex code and search them under their code and
+ * the common names having that code (see the code map), which many search engines can compute natively.
+ */
+public class SynonymExporter {
+   private static Logger logger = Logger.getLogger("org.folg.names.eval");
+   private static final int NAMES_PER_TASK = 1000;
+
+   @Option(name="-t", required=false, usage="table (csv) in (uses default if not provided)")
+   private File tableFile = null;
+
+   @Option(name="-s", required=false, usage="surnames")
+   private boolean isSurname;
+
+   @Option(name="-x", required=false, usage="use index-time expansion")
+   private boolean indexTimeExpansion;
+
+   @Option(name="-so", required=false, usage="search-time synonyms out")
+   private File searchSynonymsFile = null;
+
+   @Option(name="-io", required=false, usage="index-time synonyms out")
+   private File indexSynonymsFile = null;
+
+   @Option(name="-jo", required=false, usage="line-delimited json out")
+   private File jsonFile = null;
+
+   @Option(name="-n", required=false, usage="number of threads (defaults to number of processors)")
+   private int numThreads = Runtime.getRuntime().availableProcessors();
+
+   private Searcher searcher;
+
+   private static class Expansion {
+      String name;
+      Collection<String> searchTokens;
+      Collection<String> indexTokens;
+   }
+
+   private Future<List<Expansion>> submit(ExecutorService executor, final List<String> names) {
+      return executor.submit(new Callable<List<Expansion>>() {
+         public List<Expansion> call() {
+            List<Expansion> expansions = new ArrayList<Expansion>(names.size());
+            for (String name : names) {
+               Expansion expansion = new Expansion();
+               expansion.name = name;
+               expansion.searchTokens = new TreeSet<String>(searcher.getAdditionalSearchTokens(name));
+               expansion.indexTokens = new TreeSet<String>(searcher.getAdditionalIndexTokens(name));
+               expansions.add(expansion);
+            }
+            return expansions;
+         }
+      });
+   }
+
+   private static void writeSynonyms(PrintWriter writer, String name, Collection<String> tokens) {
+      if (writer != null && tokens.size() > 0) {
+         writer.print(name);
+         writer.print(" => ");
+         writer.print(name);
+         for (String token : tokens) {
+            writer.print(", ");
+            writer.print(token);
+         }
+         writer.println();
+      }
+   }
+
+   private static void writeJsonArray(PrintWriter writer, Collection<String> tokens) {
+      writer.print('[');
+      boolean first = true;
+      for (String token : tokens) {
+         if (!first) {
+            writer.print(',');
+         }
+         // names and codes contain only letters and digits, so they don't need escaping
+         writer.print('"');
+         writer.print(token);
+         writer.print('"');
+         first = false;
+      }
+      writer.print(']');
+   }
+
+   private void write(Future<List<Expansion>> future, PrintWriter searchWriter, PrintWriter indexWriter, PrintWriter jsonWriter)
+           throws IOException {
+      List<Expansion> expansions;
+      try {
+         expansions = future.get();
+      }
+      catch (InterruptedException e) {
+         throw new IOException("Interrupted");
+      }
+      catch (ExecutionException e) {
+         throw new RuntimeException("Error expanding names", e.getCause());
+      }
+      for (Expansion expansion : expansions) {
+         writeSynonyms(searchWriter, expansion.name, expansion.searchTokens);
+         writeSynonyms(indexWriter, expansion.name, expansion.indexTokens);
+         if (jsonWriter != null) {
+            jsonWriter.print("{\"name\":\""+expansion.name+"\",\"search\":");
+            writeJsonArray(jsonWriter, expansion.searchTokens);
+            jsonWriter.print(",\"index\":");
+            writeJsonArray(jsonWriter, expansion.indexTokens);
+            jsonWriter.println('}');
+         }
+      }
+   }
+
+   private static PrintWriter getWriter(File file) throws IOException {
+      if (file == null) {
+         return null;
+      }
+      return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF8")));
+   }
+
+   public void doMain() throws IOException {
+      searcher = isSurname ? Searcher.getSurnameInstance() : Searcher.getGivennameInstance();
+      if (tableFile != null) {
+         logger.info("Reading "+tableFile.getAbsolutePath());
+         Reader tableReader = new InputStreamReader(new FileInputStream(tableFile), "UTF8");
+         try {
+            searcher.readSimilarNames(tableReader);
+         }
+         finally {
+            tableReader.close();
+         }
+      }
+      if (indexTimeExpansion) {
+         searcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+      }
+
+      // names in the tables: common names, plus every name in the similar-names table and its similar names,
+      // plus prefixed surnames and their basenames, which expand to each other
+      Set<String> names = new TreeSet<String>(searcher.getCommonNames());
+      Map<String,String[]> similarNamesMap = searcher.getSimilarNamesMap();
+      if (similarNamesMap != null) {
+         for (Map.Entry<String,String[]> entry : similarNamesMap.entrySet()) {
+            names.add(entry.getKey());
+            Collections.addAll(names, entry.getValue());
+         }
+      }
+      else {
+         // the similar names are read from a database, which can't list its names; export the ones for the common names
+         logger.warning("Similar names table not in memory; exporting only the common names and their similar names");
+         for (String name : searcher.getCommonNames()) {
+            names.addAll(searcher.getSimilarNames(name));
+         }
+      }
+      for (String prefixedName : searcher.getPrefixedSurnames()) {
+         names.add(prefixedName);
+         names.add(searcher.getBasename(prefixedName));
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      PrintWriter searchWriter = null;
+      PrintWriter indexWriter = null;
+      PrintWriter jsonWriter = null;
+      try {
+         searchWriter = getWriter(searchSynonymsFile);
+         indexWriter = getWriter(indexSynonymsFile);
+         jsonWriter = getWriter(jsonFile);
+
+         // keep a bounded number of tasks in flight, and write their results in order
+         LinkedList<Future<List<Expansion>>> pending = new LinkedList<Future<List<Expansion>>>();
+         List<String> taskNames = new ArrayList<String>(NAMES_PER_TASK);
+         for (String name : names) {
+            taskNames.add(name);
+            if (taskNames.size() == NAMES_PER_TASK) {
+               pending.add(submit(executor, taskNames));
+               taskNames = new ArrayList<String>(NAMES_PER_TASK);
+               if (pending.size() > numThreads * 2) {
+                  write(pending.removeFirst(), searchWriter, indexWriter, jsonWriter);
+               }
+            }
+         }
+         if (taskNames.size() > 0) {
+            pending.add(submit(executor, taskNames));
+         }
+         while (pending.size() > 0) {
+            write(pending.removeFirst(), searchWriter, indexWriter, jsonWriter);
+         }
+      }
+      finally {
+         executor.shutdownNow();
+         if (searchWriter != null) {
+            searchWriter.close();
+         }
+         if (indexWriter != null) {
+            indexWriter.close();
+         }
+         if (jsonWriter != null) {
+            jsonWriter.close();
+         }
+      }
+      logger.info("Exported "+names.size()+" names");
+   }
+
+   public static void main(String[] args) throws IOException {
+      SynonymExporter self = new SynonymExporter();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
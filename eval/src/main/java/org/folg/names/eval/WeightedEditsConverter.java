@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.eval;
+
+import org.folg.names.score.WeightedEdits;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Convert a weighted edits model from the text format to the binary format, which loads faster.
+ * Put the result on the classpath next to the text model as surnameWeightedEdits.bin or givennameWeightedEdits.bin;
+ * it records the checksum of the text model, and is ignored if the text model changes, so convert it again then
+ */
+public class WeightedEditsConverter {
+   private static Logger logger = Logger.getLogger("org.folg.names.eval");
+
+   @Option(name="-i", required=true, usage="weighted edits model in (text)")
+   private File modelFile = null;
+
+   @Option(name="-o", required=true, usage="weighted edits model out (binary)")
+   private File binaryFile = null;
+
+   private void doMain() throws IOException {
+      logger.info("Reading "+modelFile.getAbsolutePath());
+      WeightedEdits we = new WeightedEdits();
+      we.load(modelFile);
+      long checksum = WeightedEdits.getChecksum(new FileInputStream(modelFile));
+      we.saveBinary(binaryFile, checksum);
+
+      // make sure it reads back the same
+      WeightedEdits binaryWe = new WeightedEdits();
+      if (binaryWe.loadBinary(new FileInputStream(binaryFile)) != checksum || we.difference(binaryWe) != 0) {
+         throw new IOException("Binary model differs from "+modelFile.getAbsolutePath());
+      }
+   }
+
+   public static void main(String[] args) throws IOException {
+      WeightedEditsConverter self = new WeightedEditsConverter();
+      CmdLineParser parser = new CmdLineParser(self);
+      try {
+         parser.parseArgument(args);
+         self.doMain();
+      }
+      catch (CmdLineException e) {
+         // handling of wrong arguments
+         System.err.println(e.getMessage());
+         parser.printUsage(System.err);
+      }
+   }
+}
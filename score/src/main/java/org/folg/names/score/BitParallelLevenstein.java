@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+/**
+ * Levenstein distance computed a column at a time with bit-vectors (Myers, Hyyro):
+ * bit i of each vector holds the difference between rows i+1 and i of the usual dynamic programming table.
+ * Names up to 64 characters long fit in a single long; longer names are split into blocks of 64.
+ * Returns the same values as SecondString's Levenstein, which ignores case, without allocating once the buffers are large enough.
+ * Not thread-safe; reuse one per thread.
+ */
+public class BitParallelLevenstein {
+   private static final int ASCII_SIZE = 128;
+
+   // for characters < 128, the bits of pattern positions holding that character, at c*numBlocks+block
+   private long[] charMasks = new long[ASCII_SIZE];
+   // positive and negative vertical differences for each block
+   private long[] pv = new long[1];
+   private long[] mv = new long[1];
+
+   /**
+    * Same as SecondString's Levenstein score
+    * @param s a string
+    * @param t another string
+    * @return the negative of the number of insertions, deletions, and substitutions needed to turn s into t
+    */
+   public double score(String s, String t) {
+      return -distance(s, t);
+   }
+
+   /**
+    * @param s a string
+    * @param t another string
+    * @return number of insertions, deletions, and substitutions needed to turn s into t
+    */
+   public int distance(String s, String t) {
+      // the distance is symmetric, so put the shorter string in the bit-vectors
+      String pattern = s;
+      String text = t;
+      if (pattern.length() > text.length()) {
+         pattern = t;
+         text = s;
+      }
+      int m = pattern.length();
+      if (m == 0) {
+         return text.length();
+      }
+      int numBlocks = (m + 63) >>> 6;
+      if (charMasks.length < ASCII_SIZE * numBlocks) {
+         charMasks = new long[ASCII_SIZE * numBlocks];
+         pv = new long[numBlocks];
+         mv = new long[numBlocks];
+      }
+      for (int i = 0; i < m; i++) {
+         char c = Character.toLowerCase(pattern.charAt(i));
+         if (c < ASCII_SIZE) {
+            charMasks[c * numBlocks + (i >>> 6)] |= 1L << (i & 63);
+         }
+      }
+
+      int distance = (numBlocks == 1 ? wordDistance(pattern, text) : blockDistance(pattern, text, numBlocks));
+
+      // leave the masks clear for next time
+      for (int i = 0; i < m; i++) {
+         char c = Character.toLowerCase(pattern.charAt(i));
+         if (c < ASCII_SIZE) {
+            charMasks[c * numBlocks + (i >>> 6)] = 0;
+         }
+      }
+      return distance;
+   }
+
+   // c must be lower case
+   private long getCharMask(String pattern, char c, int block, int numBlocks) {
+      if (c < ASCII_SIZE) {
+         return charMasks[c * numBlocks + block];
+      }
+      long mask = 0;
+      int end = Math.min(pattern.length(), (block+1) * 64);
+      for (int i = block * 64; i < end; i++) {
+         if (Character.toLowerCase(pattern.charAt(i)) == c) {
+            mask |= 1L << (i & 63);
+         }
+      }
+      return mask;
+   }
+
+   // pattern fits in one long
+   private int wordDistance(String pattern, String text) {
+      int m = pattern.length();
+      long last = 1L << (m - 1);
+      long pv = -1L;
+      long mv = 0L;
+      int distance = m;
+      for (int j = 0; j < text.length(); j++) {
+         long eq = getCharMask(pattern, Character.toLowerCase(text.charAt(j)), 0, 1);
+         long xv = eq | mv;
+         long xh = (((eq & pv) + pv) ^ pv) | eq;
+         long ph = mv | ~(xh | pv);
+         long mh = pv & xh;
+         if ((ph & last) != 0) {
+            distance++;
+         }
+         else if ((mh & last) != 0) {
+            distance--;
+         }
+         // the top row of the table increases by 1 in each column
+         ph = (ph << 1) | 1L;
+         mh = mh << 1;
+         pv = mh | ~(xv | ph);
+         mv = ph & xv;
+      }
+      return distance;
+   }
+
+   // pattern is split into blocks of 64; each block passes the horizontal difference in its bottom row to the next
+   private int blockDistance(String pattern, String text, int numBlocks) {
+      int m = pattern.length();
+      int lastBlock = numBlocks - 1;
+      long last = 1L << ((m - 1) & 63);
+      for (int b = 0; b < numBlocks; b++) {
+         pv[b] = -1L;
+         mv[b] = 0L;
+      }
+      int distance = m;
+      for (int j = 0; j < text.length(); j++) {
+         char c = Character.toLowerCase(text.charAt(j));
+         // horizontal difference coming into the top of the block: +1 for the top row of the table
+         int hIn = 1;
+         for (int b = 0; b < numBlocks; b++) {
+            long eq = getCharMask(pattern, c, b, numBlocks);
+            long pvb = pv[b];
+            long mvb = mv[b];
+            long xv = eq | mvb;
+            if (hIn < 0) {
+               eq |= 1L;
+            }
+            long xh = (((eq & pvb) + pvb) ^ pvb) | eq;
+            long ph = mvb | ~(xh | pvb);
+            long mh = pvb & xh;
+            if (b == lastBlock) {
+               if ((ph & last) != 0) {
+                  distance++;
+               }
+               else if ((mh & last) != 0) {
+                  distance--;
+               }
+            }
+            int hOut = (ph < 0 ? 1 : (mh < 0 ? -1 : 0));
+            ph <<= 1;
+            mh <<= 1;
+            if (hIn < 0) {
+               mh |= 1L;
+            }
+            else if (hIn > 0) {
+               ph |= 1L;
+            }
+            pv[b] = mh | ~(xv | ph);
+            mv[b] = ph & xv;
+            hIn = hOut;
+         }
+      }
+      return distance;
+   }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of names to score a query against, created by Scorer.newCandidateSet
+ * The codes for all names are computed once and kept in flat arrays: the weighted edit distance tokens of all names
+ * are stored one after the other, and each phonetic code is replaced by a number, equal for equal codes,
+ * so matching a query's code against every name compares ints instead of Strings.
+ * The names are also kept in order of their tokens, so scoring a query against them can reuse the work for
+ * the tokens each name shares with the previous one.
+ * Thread-safe once created.
+ */
+public class CandidateSet {
+   static final int NYSIIS_MATCH = 1;
+   static final int SOUNDEX_MATCH = 2;
+   static final int REFINED_SOUNDEX_MATCH = 4;
+   static final int DM_SOUNDEX_MATCH = 8;
+
+   // numbers the codes of one type
+   private static class CodeColumn {
+      final int[] numbers;
+      final Map<String,Integer> codeNumbers = new HashMap<String,Integer>();
+
+      CodeColumn(int size) {
+         numbers = new int[size];
+      }
+
+      void set(int i, String code) {
+         numbers[i] = -1;
+         if (code != null) {
+            Integer number = codeNumbers.get(code);
+            if (number == null) {
+               number = codeNumbers.size();
+               codeNumbers.put(code, number);
+            }
+            numbers[i] = number;
+         }
+      }
+
+      void match(String code, int[] matches, int size, int bit) {
+         Integer number = (code == null ? null : codeNumbers.get(code));
+         if (number != null) {
+            int n = number;
+            for (int i = 0; i < size; i++) {
+               if (numbers[i] == n) {
+                  matches[i] |= bit;
+               }
+            }
+         }
+      }
+   }
+
+   private final Scorer scorer;
+   private final String[] names;
+   // the tokens for name i are tokens[tokenOffsets[i]] up to tokens[tokenOffsets[i+1]]
+   private final int[] tokenOffsets;
+   private final int[] tokens;
+   private final double[] wedMinCosts;
+   private final int maxTokens;
+   // indexes of the names sorted by their tokens, and the number of leading tokens each shares with the one before it
+   private final int[] tokenOrder;
+   private final int[] sharedTokens;
+   private final CodeColumn nysCodes;
+   private final CodeColumn sdxCodes;
+   private final CodeColumn refSdxCodes;
+   private final CodeColumn dmSdxCodes;
+
+   CandidateSet(Scorer scorer, FeaturesGenerator featuresGenerator, String[] names) {
+      this.scorer = scorer;
+      this.names = names.clone();
+      int size = names.length;
+      tokenOffsets = new int[size+1];
+      wedMinCosts = new double[size];
+      nysCodes = new CodeColumn(size);
+      sdxCodes = new CodeColumn(size);
+      refSdxCodes = new CodeColumn(size);
+      dmSdxCodes = new CodeColumn(size);
+      Codes[] codes = new Codes[size];
+      for (int i = 0; i < size; i++) {
+         codes[i] = featuresGenerator.getCodes(names[i]);
+         tokenOffsets[i+1] = tokenOffsets[i] + codes[i].wedTokens.length;
+         wedMinCosts[i] = codes[i].wedMinCost;
+         nysCodes.set(i, codes[i].nysCode);
+         sdxCodes.set(i, codes[i].sdxCode);
+         refSdxCodes.set(i, codes[i].refSdxCode);
+         dmSdxCodes.set(i, codes[i].dmSdxCode);
+      }
+      tokens = new int[tokenOffsets[size]];
+      int max = 0;
+      for (int i = 0; i < size; i++) {
+         System.arraycopy(codes[i].wedTokens, 0, tokens, tokenOffsets[i], codes[i].wedTokens.length);
+         max = Math.max(max, codes[i].wedTokens.length);
+      }
+      maxTokens = max;
+
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+         order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare(Integer i, Integer j) {
+            int shared = getSharedTokens(i, j);
+            int iLength = tokenOffsets[i+1] - tokenOffsets[i];
+            int jLength = tokenOffsets[j+1] - tokenOffsets[j];
+            if (shared == iLength || shared == jLength) {
+               return iLength - jLength;
+            }
+            return tokens[tokenOffsets[i]+shared] - tokens[tokenOffsets[j]+shared];
+         }
+      });
+      tokenOrder = new int[size];
+      sharedTokens = new int[size];
+      for (int k = 0; k < size; k++) {
+         tokenOrder[k] = order[k];
+         sharedTokens[k] = (k == 0 ? 0 : getSharedTokens(order[k-1], order[k]));
+      }
+   }
+
+   private int getSharedTokens(int i, int j) {
+      int length = Math.min(tokenOffsets[i+1] - tokenOffsets[i], tokenOffsets[j+1] - tokenOffsets[j]);
+      int shared = 0;
+      while (shared < length && tokens[tokenOffsets[i]+shared] == tokens[tokenOffsets[j]+shared]) {
+         shared++;
+      }
+      return shared;
+   }
+
+   Scorer getScorer() {
+      return scorer;
+   }
+
+   /**
+    * @return number of names in the set
+    */
+   public int size() {
+      return names.length;
+   }
+
+   /**
+    * @param i index
+    * @return the i'th name, in the order passed to Scorer.newCandidateSet
+    */
+   public String getName(int i) {
+      return names[i];
+   }
+
+   int getMaxTokens() {
+      return maxTokens;
+   }
+
+   /**
+    * @return the index of the k'th name in order of their tokens
+    */
+   int getTokenOrder(int k) {
+      return tokenOrder[k];
+   }
+
+   /**
+    * @return number of leading tokens the k'th name in order of their tokens shares with the one before it
+    */
+   int getSharedTokens(int k) {
+      return sharedTokens[k];
+   }
+
+   /**
+    * Copy the weighted edit distance tokens for the i'th name into a buffer from the workspace
+    */
+   int[] getTokens(int i, ScoringWorkspace workspace) {
+      int[] buffer = workspace.getTokenBuffer(tokenOffsets[i+1] - tokenOffsets[i]);
+      System.arraycopy(tokens, tokenOffsets[i], buffer, 0, buffer.length);
+      return buffer;
+   }
+
+   /**
+    * @return the minimum weighted edit distance cost of the i'th name's tokens; see Codes.wedMinCost
+    */
+   double getWedMinCost(int i) {
+      return wedMinCosts[i];
+   }
+
+   /**
+    * Find which of the query's codes each name matches
+    * @param codes query codes
+    * @param workspace workspace to hold the result
+    * @return for each name, the *_MATCH bits for the codes it shares with the query
+    */
+   int[] matchCodes(Codes codes, ScoringWorkspace workspace) {
+      int size = names.length;
+      int[] matches = workspace.getCodeMatchesBuffer(size);
+      for (int i = 0; i < size; i++) {
+         matches[i] = 0;
+      }
+      nysCodes.match(codes.nysCode, matches, size, NYSIIS_MATCH);
+      sdxCodes.match(codes.sdxCode, matches, size, SOUNDEX_MATCH);
+      refSdxCodes.match(codes.refSdxCode, matches, size, REFINED_SOUNDEX_MATCH);
+      dmSdxCodes.match(codes.dmSdxCode, matches, size, DM_SOUNDEX_MATCH);
+      return matches;
+   }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+/**
+ * Pack a phonetic code into a long, so codes can be compared with a single integer compare
+ * and used as keys without keeping the Strings.
+ * Codes made of an optional leading letter followed by digits (soundex, refined soundex, Daitch-Mokotoff soundex)
+ * are packed up to 16 digits; other codes made of upper-case letters and digits (nysiis) up to 11 characters.
+ * Packed codes are never negative, and different codes pack to different values.
+ * Longer codes can't be packed exactly; they're hashed to a negative value, which other long codes may share,
+ * so compare those codes with sameCode.
+ */
+public class CodePacker {
+   // set on codes packed as a letter followed by digits, so they differ from codes packed as letters and digits
+   private static final long LETTER_DIGITS = 1L << 62;
+   private static final int MAX_DIGITS = 16;
+   private static final int MAX_LETTERS_AND_DIGITS_LENGTH = 11;
+
+   /**
+    * Pack a code into a long
+    * @param code code; null packs to 0, which no code packs to
+    * @return packed code, negative if the code is too long to pack exactly
+    */
+   public static long pack(String code) {
+      if (code == null) {
+         return 0L;
+      }
+      int length = code.length();
+      int start = (length > 0 && isLetter(code.charAt(0)) ? 1 : 0);
+      int pos = start;
+      while (pos < length && isDigit(code.charAt(pos))) {
+         pos++;
+      }
+      if (pos == length && length - start <= MAX_DIGITS) {
+         return packLetterDigits(code);
+      }
+      if (length <= MAX_LETTERS_AND_DIGITS_LENGTH && isLettersAndDigits(code)) {
+         return packLettersAndDigits(code);
+      }
+      return hash(code);
+   }
+
+   /**
+    * Return true if two packed codes are the same code
+    * @param packed1 packed code
+    * @param code1 code that was packed into packed1
+    * @param packed2 another packed code
+    * @param code2 code that was packed into packed2
+    * @return true if the codes are equal
+    */
+   public static boolean sameCode(long packed1, String code1, long packed2, String code2) {
+      return packed1 == packed2 && (packed1 >= 0 || code1.equals(code2));
+   }
+
+   private static boolean isLetter(char c) {
+      return c >= 'A' && c <= 'Z';
+   }
+
+   private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+   }
+
+   private static boolean isLettersAndDigits(String code) {
+      for (int i = 0; i < code.length(); i++) {
+         char c = code.charAt(i);
+         if (!isLetter(c) && !isDigit(c)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   // a base-11 digit for each digit: 1..10, so the length is implied, then a base-27 digit for the letter: 1..26, or 0 if there isn't one
+   private static long packLetterDigits(String code) {
+      int start = (code.length() > 0 && isLetter(code.charAt(0)) ? 1 : 0);
+      long packed = 0;
+      for (int pos = start; pos < code.length(); pos++) {
+         packed = packed * 11 + (code.charAt(pos) - '0' + 1);
+      }
+      packed = packed * 27 + (start == 1 ? code.charAt(0) - 'A' + 1 : 0);
+      return packed | LETTER_DIGITS;
+   }
+
+   // a base-37 digit for each character: 1..10 for digits, 11..36 for letters
+   private static long packLettersAndDigits(String code) {
+      long packed = 0;
+      for (int i = 0; i < code.length(); i++) {
+         char c = code.charAt(i);
+         packed = packed * 37 + (isDigit(c) ? c - '0' + 1 : c - 'A' + 11);
+      }
+      return packed;
+   }
+
+   // 64-bit FNV-1a hash, made negative
+   private static long hash(String code) {
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < code.length(); i++) {
+         hash ^= code.charAt(i);
+         hash *= 0x100000001b3L;
+      }
+      return hash | Long.MIN_VALUE;
+   }
+}
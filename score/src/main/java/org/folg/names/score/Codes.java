@@ -21,8 +21,25 @@ package org.folg.names.score;
  */
 public class Codes {
    public int[] wedTokens;
+   // the weighted edit distance of the tokens to themselves, which normalizes the weighted edit distances of this name
+   public double wedMinCost;
    public String nysCode;
    public String sdxCode;
    public String refSdxCode;
    public String dmSdxCode;
+   // the codes packed by CodePacker; equal codes have equal packed codes, so they can be used as blocking keys
+   public long packedNysCode;
+   public long packedSdxCode;
+   public long packedRefSdxCode;
+   public long packedDmSdxCode;
+
+   /**
+    * Set the packed codes; call after setting the codes
+    */
+   public void pack() {
+      packedNysCode = CodePacker.pack(nysCode);
+      packedSdxCode = CodePacker.pack(sdxCode);
+      packedRefSdxCode = CodePacker.pack(refSdxCode);
+      packedDmSdxCode = CodePacker.pack(dmSdxCode);
+   }
 }
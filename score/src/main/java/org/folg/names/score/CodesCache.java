@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded cache of the codes for names that can be shared between threads
+ * Names are spread over several least-recently-used segments, each with its own lock, so threads seldom wait on each other.
+ * Cached codes are shared, so callers must not modify them
+ */
+public class CodesCache {
+   private static final int SEGMENTS = 16;
+
+   private final List<Map<String,Codes>> segments;
+   private final AtomicLong hitCount = new AtomicLong();
+   private final AtomicLong missCount = new AtomicLong();
+
+   /**
+    * Create a new cache
+    * @param maxSize maximum number of names to cache
+    */
+   public CodesCache(int maxSize) {
+      final int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+      segments = new ArrayList<Map<String,Codes>>(SEGMENTS);
+      for (int i = 0; i < SEGMENTS; i++) {
+         segments.add(new LinkedHashMap<String,Codes>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Codes> eldest) {
+               return size() > segmentSize;
+            }
+         });
+      }
+   }
+
+   private Map<String,Codes> getSegment(String name) {
+      int h = name.hashCode();
+      // spread the high bits so names differing only at the end don't share a segment
+      h ^= (h >>> 16);
+      return segments.get((h & 0x7fffffff) % SEGMENTS);
+   }
+
+   /**
+    * @param name normalized name piece
+    * @return the cached codes, or null if the name isn't cached
+    */
+   public Codes get(String name) {
+      Map<String,Codes> segment = getSegment(name);
+      Codes codes;
+      synchronized (segment) {
+         codes = segment.get(name);
+      }
+      if (codes == null) {
+         missCount.incrementAndGet();
+      }
+      else {
+         hitCount.incrementAndGet();
+      }
+      return codes;
+   }
+
+   public void put(String name, Codes codes) {
+      Map<String,Codes> segment = getSegment(name);
+      synchronized (segment) {
+         segment.put(name, codes);
+      }
+   }
+
+   public void clear() {
+      for (Map<String,Codes> segment : segments) {
+         synchronized (segment) {
+            segment.clear();
+         }
+      }
+   }
+
+   public int size() {
+      int size = 0;
+      for (Map<String,Codes> segment : segments) {
+         synchronized (segment) {
+            size += segment.size();
+         }
+      }
+      return size;
+   }
+
+   public long getHitCount() {
+      return hitCount.get();
+   }
+
+   public long getMissCount() {
+      return missCount.get();
+   }
+}
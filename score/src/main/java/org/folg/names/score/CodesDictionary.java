@@ -0,0 +1,275 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A prebuilt dictionary of the codes for known names, so scoring them doesn't need to run letter-to-sound
+ * or the phonetic coders.  Build it with CodesDictionaryBuilder in the eval module.
+ * The dictionary is read in place from a (memory-mapped) buffer; instances are immutable and can be shared between threads.
+ *
+ * Format: magic, version, surname flag, name count, then the token table, then a sorted table of record offsets, then the records.
+ * The token table is the token count followed by the name of each token id, so a dictionary built with different token ids
+ * is read with the ids of this tokenizer, and a dictionary with tokens this tokenizer doesn't have is rejected.
+ * Each record is the name, its wed tokens, and its nysiis, soundex, refined soundex, and daitch-mokotoff codes;
+ * the name and each code are a length byte followed by ascii characters, and the tokens are a count byte
+ * followed by one byte per token
+ */
+public class CodesDictionary {
+   private static final int MAGIC = 0x434f4445;
+   // bump when the coders change, so old dictionaries aren't used
+   private static final int VERSION = 2;
+   private static final int HEADER_SIZE = 16;
+   private static final int NULL_CODE = 0xff;
+   private static final int MAX_LENGTH = 0xfe;
+
+   private final ByteBuffer buffer;
+   private final boolean isSurname;
+   private final int size;
+   // maps the token ids in the dictionary to the token ids of this tokenizer
+   private final int[] tokenIds;
+   private final int offsetsStart;
+
+   private CodesDictionary(ByteBuffer buffer) throws IOException {
+      if (buffer.getInt(0) != MAGIC) {
+         throw new IOException("Bad codes dictionary format");
+      }
+      if (buffer.getInt(4) != VERSION) {
+         throw new IOException("Codes dictionary version "+buffer.getInt(4)+" is out of date; rebuild it");
+      }
+      this.buffer = buffer;
+      this.isSurname = (buffer.getInt(8) != 0);
+      this.size = buffer.getInt(12);
+
+      // read the token table
+      int pos = HEADER_SIZE;
+      int numTokens = buffer.getInt(pos);
+      pos += 4;
+      if (numTokens < 0 || numTokens > MAX_LENGTH) {
+         throw new IOException("Bad codes dictionary token count "+numTokens);
+      }
+      tokenIds = new int[numTokens];
+      for (int i = 0; i < numTokens; i++) {
+         // written by writeUTF; tokens are ascii
+         int len = buffer.getShort(pos) & 0xffff;
+         pos += 2;
+         char[] chars = new char[len];
+         for (int j = 0; j < len; j++) {
+            chars[j] = (char)(buffer.get(pos + j) & 0xff);
+         }
+         pos += len;
+         String token = new String(chars);
+         tokenIds[i] = (len == 0 ? WeightedEditDistanceTokenizer.EMPTY_TOKEN : WeightedEditDistanceTokenizer.getPhonemeId(token));
+         if (tokenIds[i] < 0) {
+            throw new IOException("Codes dictionary has unknown token "+token+"; rebuild it");
+         }
+      }
+      this.offsetsStart = pos;
+   }
+
+   /**
+    * Memory-map a dictionary file
+    * @param file dictionary
+    * @return dictionary
+    * @throws IOException if the file can't be read or isn't a current dictionary
+    */
+   public static CodesDictionary map(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         // the mapping stays valid after the channel is closed
+         return new CodesDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+      finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Read a dictionary into memory; use this for dictionaries that are classpath resources
+    * @param in dictionary
+    * @return dictionary
+    * @throws IOException if the stream can't be read or isn't a current dictionary
+    */
+   public static CodesDictionary read(InputStream in) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buf = new byte[65536];
+      int len;
+      while ((len = in.read(buf)) > 0) {
+         bytes.write(buf, 0, len);
+      }
+      return new CodesDictionary(ByteBuffer.wrap(bytes.toByteArray()));
+   }
+
+   private static void writeString(DataOutputStream out, String s) throws IOException {
+      if (s == null) {
+         out.writeByte(NULL_CODE);
+      }
+      else {
+         if (s.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Too long: "+s);
+         }
+         for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0x7f) {
+               throw new IllegalArgumentException("Not ascii: "+s);
+            }
+         }
+         out.writeByte(s.length());
+         out.writeBytes(s);
+      }
+   }
+
+   /**
+    * Write a dictionary
+    * @param out stream to write
+    * @param isSurname true if the codes were generated for surnames
+    * @param names names in sorted order; each must be ascii and no longer than 254 characters
+    * @param codes codes for each name
+    * @throws IOException writing out
+    */
+   public static void write(OutputStream out, boolean isSurname, List<String> names, List<Codes> codes) throws IOException {
+      DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(isSurname ? 1 : 0);
+      dos.writeInt(names.size());
+
+      // the tokens are saved so a dictionary built with different token ids can't be misread
+      ByteArrayOutputStream tokenTable = new ByteArrayOutputStream();
+      DataOutputStream tokenTableOut = new DataOutputStream(tokenTable);
+      tokenTableOut.writeInt(WeightedEditDistanceTokenizer.NUM_TOKENS);
+      for (int i = 0; i < WeightedEditDistanceTokenizer.NUM_TOKENS; i++) {
+         tokenTableOut.writeUTF(WeightedEditDistanceTokenizer.getToken(i));
+      }
+      tokenTable.writeTo(dos);
+
+      // write the records to memory first to find their offsets
+      ByteArrayOutputStream records = new ByteArrayOutputStream();
+      DataOutputStream recordsOut = new DataOutputStream(records);
+      int recordsStart = HEADER_SIZE + tokenTable.size() + names.size() * 4;
+      String prevName = null;
+      for (int i = 0; i < names.size(); i++) {
+         String name = names.get(i);
+         if (prevName != null && prevName.compareTo(name) >= 0) {
+            throw new IllegalArgumentException("Names must be sorted and unique: "+prevName+" "+name);
+         }
+         prevName = name;
+         dos.writeInt(recordsStart + recordsOut.size());
+         Codes c = codes.get(i);
+         writeString(recordsOut, name);
+         if (c.wedTokens.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Too long: "+name);
+         }
+         recordsOut.writeByte(c.wedTokens.length);
+         for (int token : c.wedTokens) {
+            recordsOut.writeByte(token);
+         }
+         writeString(recordsOut, c.nysCode);
+         writeString(recordsOut, c.sdxCode);
+         writeString(recordsOut, c.refSdxCode);
+         writeString(recordsOut, c.dmSdxCode);
+      }
+      records.writeTo(dos);
+      dos.flush();
+   }
+
+   public boolean isSurname() {
+      return isSurname;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   // compare name to the name at the start of the record
+   private int compare(String name, int pos) {
+      int len = buffer.get(pos) & 0xff;
+      pos++;
+      int n = Math.min(len, name.length());
+      for (int i = 0; i < n; i++) {
+         int diff = name.charAt(i) - (buffer.get(pos + i) & 0xff);
+         if (diff != 0) {
+            return diff;
+         }
+      }
+      return name.length() - len;
+   }
+
+   private String readString(int pos) {
+      int len = buffer.get(pos) & 0xff;
+      if (len == NULL_CODE) {
+         return null;
+      }
+      char[] chars = new char[len];
+      for (int i = 0; i < len; i++) {
+         chars[i] = (char)(buffer.get(pos + 1 + i) & 0xff);
+      }
+      return new String(chars);
+   }
+
+   private int skipString(int pos) {
+      int len = buffer.get(pos) & 0xff;
+      return pos + 1 + (len == NULL_CODE ? 0 : len);
+   }
+
+   /**
+    * Look up the codes for a name
+    * @param name normalized name piece
+    * @return codes, or null if the name isn't in the dictionary
+    */
+   public Codes get(String name) {
+      int lo = 0;
+      int hi = size - 1;
+      while (lo <= hi) {
+         int mid = (lo + hi) >>> 1;
+         int pos = buffer.getInt(offsetsStart + mid * 4);
+         int cmp = compare(name, pos);
+         if (cmp < 0) {
+            hi = mid - 1;
+         }
+         else if (cmp > 0) {
+            lo = mid + 1;
+         }
+         else {
+            return readCodes(skipString(pos));
+         }
+      }
+      return null;
+   }
+
+   private Codes readCodes(int pos) {
+      Codes codes = new Codes();
+      int cnt = buffer.get(pos++) & 0xff;
+      codes.wedTokens = new int[cnt];
+      for (int i = 0; i < cnt; i++) {
+         codes.wedTokens[i] = tokenIds[buffer.get(pos++) & 0xff];
+      }
+      codes.nysCode = readString(pos);
+      pos = skipString(pos);
+      codes.sdxCode = readString(pos);
+      pos = skipString(pos);
+      codes.refSdxCode = readString(pos);
+      pos = skipString(pos);
+      codes.dmSdxCode = readString(pos);
+      codes.pack();
+      return codes;
+   }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Letter-to-sound rules compiled into flat int arrays
+ * Reads the FreeTTS binary rules (cmulex_lts.bin) and evaluates them the same way FreeTTS LetterToSoundImpl.getPhones does,
+ * but writes phoneme token ids straight into an int array instead of walking state objects and returning strings.
+ * Instances are immutable and can be shared between threads
+ */
+public final class CompiledLetterToSound {
+   private static final int MAGIC = 0xdeadbeef;
+   private static final int VERSION = 1;
+   private static final int DECISION_STATE = 1;
+   private static final int FINAL_STATE = 2;
+
+   // each state takes STATE_SIZE ints: window offset, letter, true state, false state
+   // final states have FINAL as their window offset, followed by 0, phoneme offset, phoneme count
+   private static final int STATE_SIZE = 4;
+   private static final int FINAL = -1;
+
+   // the rules look at WINDOW_SIZE characters on each side of the letter; the word is padded with 000# and #000
+   private static final int WINDOW_SIZE = 4;
+   private static final char PAD = '0';
+   private static final char BOUNDARY = '#';
+
+   private final int[] letterStates;
+   private final int[] states;
+   private final int[] phonemes;
+   private final int maxPhonemesPerLetter;
+
+   private CompiledLetterToSound(int[] letterStates, int[] states, int[] phonemes, int maxPhonemesPerLetter) {
+      this.letterStates = letterStates;
+      this.states = states;
+      this.phonemes = phonemes;
+      this.maxPhonemesPerLetter = maxPhonemesPerLetter;
+   }
+
+   /**
+    * Compile FreeTTS binary letter-to-sound rules
+    * @param in rules in FreeTTS binary format
+    * @return compiled rules
+    * @throws IOException if the rules can't be read or use a phoneme the tokenizer doesn't know
+    */
+   public static CompiledLetterToSound compile(InputStream in) throws IOException {
+      DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+      if (dis.readInt() != MAGIC) {
+         throw new IOException("Bad LTS binary file format");
+      }
+      if (dis.readInt() != VERSION) {
+         throw new IOException("Bad LTS binary file version");
+      }
+
+      // map the phone list onto token ids
+      int[] phoneIds = new int[dis.readInt()];
+      for (int i = 0; i < phoneIds.length; i++) {
+         String phone = dis.readUTF();
+         phoneIds[i] = WeightedEditDistanceTokenizer.getPhonemeId(phone);
+         if (phoneIds[i] < 0) {
+            throw new IOException("Unknown phoneme: "+phone);
+         }
+      }
+
+      // the start state for each letter
+      int letterCount = dis.readInt();
+      char[] letters = new char[letterCount];
+      int[] starts = new int[letterCount];
+      char maxLetter = 0;
+      for (int i = 0; i < letterCount; i++) {
+         letters[i] = dis.readChar();
+         starts[i] = dis.readInt();
+         maxLetter = (char)Math.max(maxLetter, letters[i]);
+      }
+      int[] letterStates = new int[maxLetter+1];
+      Arrays.fill(letterStates, -1);
+      for (int i = 0; i < letterCount; i++) {
+         letterStates[letters[i]] = starts[i] * STATE_SIZE;
+      }
+
+      int stateCount = dis.readInt();
+      int[] states = new int[stateCount * STATE_SIZE];
+      int[] phonemes = new int[16];
+      int phonemeCount = 0;
+      int maxPhonemesPerLetter = 0;
+      for (int i = 0; i < stateCount; i++) {
+         int pos = i * STATE_SIZE;
+         int type = dis.readInt();
+         if (type == DECISION_STATE) {
+            // FreeTTS copies the window around the letter, skipping the letter itself; store the offset into the padded word
+            int index = dis.readInt();
+            states[pos] = (index < WINDOW_SIZE ? index : index + 1);
+            states[pos+1] = dis.readChar();
+            states[pos+2] = dis.readInt() * STATE_SIZE;
+            states[pos+3] = dis.readInt() * STATE_SIZE;
+         }
+         else if (type == FINAL_STATE) {
+            int cnt = dis.readInt();
+            if (phonemeCount + cnt > phonemes.length) {
+               phonemes = Arrays.copyOf(phonemes, Math.max(phonemes.length * 2, phonemeCount + cnt));
+            }
+            for (int j = 0; j < cnt; j++) {
+               phonemes[phonemeCount + j] = phoneIds[dis.readInt()];
+            }
+            states[pos] = FINAL;
+            states[pos+2] = phonemeCount;
+            states[pos+3] = cnt;
+            phonemeCount += cnt;
+            maxPhonemesPerLetter = Math.max(maxPhonemesPerLetter, cnt);
+         }
+         else {
+            throw new IOException("Unknown state type in LTS load");
+         }
+      }
+
+      return new CompiledLetterToSound(letterStates, states, Arrays.copyOf(phonemes, phonemeCount), maxPhonemesPerLetter);
+   }
+
+   /**
+    * @param length word length
+    * @return the most phoneme ids getPhonemeIds can write for a word of this length
+    */
+   public int getMaxPhonemes(int length) {
+      return length * maxPhonemesPerLetter;
+   }
+
+   // return the character at pos in the padded word 000#word#000
+   private static char getPaddedChar(char[] word, int length, int pos) {
+      if (pos < WINDOW_SIZE) {
+         return (pos == WINDOW_SIZE-1 ? BOUNDARY : PAD);
+      }
+      pos -= WINDOW_SIZE;
+      if (pos < length) {
+         return word[pos];
+      }
+      return (pos == length ? BOUNDARY : PAD);
+   }
+
+   /**
+    * Write the phoneme ids for a word
+    * @param word letters of the word
+    * @param length number of letters
+    * @param phonemeIds receives the phoneme ids; must have room for getMaxPhonemes(length) ids after offset
+    * @param offset position in phonemeIds to write the first id
+    * @return number of phoneme ids written
+    */
+   public int getPhonemeIds(char[] word, int length, int[] phonemeIds, int offset) {
+      int cnt = 0;
+      for (int i = 0; i < length; i++) {
+         char c = word[i];
+         if (c >= letterStates.length || letterStates[c] < 0) {
+            // FreeTTS skips letters it has no rules for
+            continue;
+         }
+         int state = letterStates[c];
+         while (states[state] != FINAL) {
+            // the window for letter i starts at position i of the padded word
+            state = (getPaddedChar(word, length, i + states[state]) == states[state+1] ? states[state+2] : states[state+3]);
+         }
+         int first = states[state+2];
+         int last = first + states[state+3];
+         for (int j = first; j < last; j++) {
+            phonemeIds[offset + cnt++] = phonemes[j];
+         }
+      }
+      return cnt;
+   }
+}
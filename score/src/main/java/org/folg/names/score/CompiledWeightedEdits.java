@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+/**
+ * WeightedEdits compiled for scoring with a given positional weight smoothing.
+ * The costs are kept in a flat symmetric matrix, along with the cost of each token with itself,
+ * and every cost is divided by every positional weight ahead of time, so the FST only loads and adds.
+ * The weighted costs are the same doubles the FST used to compute, so scores don't change.
+ * Instances are immutable and can be shared between threads; get one from WeightedEdits.compile after the costs are final
+ */
+public final class CompiledWeightedEdits {
+   // the costs are weighted for at least this many positions to start with
+   private static final int INITIAL_POSITIONS = 64;
+
+   /**
+    * Costs divided by the positional weights for the first so many positions
+    */
+   static final class PositionWeights {
+      // weightedCosts[cost][i] is the cost of an edit at position i: cost / (i+smooth)
+      final double[][] weightedCosts;
+      // weightSums[i] is the sum of the first i positional weights
+      final double[] weightSums;
+
+      private PositionWeights(int maxCost, double smooth, int positions) {
+         weightedCosts = new double[maxCost+1][positions];
+         for (int cost = 0; cost <= maxCost; cost++) {
+            for (int i = 0; i < positions; i++) {
+               weightedCosts[cost][i] = (cost * 1.0) / (i+smooth);
+            }
+         }
+         weightSums = new double[positions+1];
+         for (int i = 0; i < positions; i++) {
+            weightSums[i+1] = weightSums[i] + 1.0 / (i+smooth);
+         }
+      }
+
+      int getPositions() {
+         return weightSums.length - 1;
+      }
+   }
+
+   private final double smooth;
+   // the cost of a src/tar edit is at sourceToken*NUM_TOKENS+targetToken
+   private final int[] costs;
+   private final int[] selfCosts;
+   private final int maxCost;
+   private volatile PositionWeights positionWeights;
+
+   CompiledWeightedEdits(WeightedEdits we, double smooth) {
+      this.smooth = smooth;
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      costs = new int[numTokens * numTokens];
+      selfCosts = new int[numTokens];
+      int max = 0;
+      for (int sourceToken = 0; sourceToken < numTokens; sourceToken++) {
+         for (int targetToken = 0; targetToken < numTokens; targetToken++) {
+            int cost = we.getCost(sourceToken, targetToken);
+            if (cost < 0) {
+               throw new IllegalArgumentException("Negative cost for "+WeightedEditDistanceTokenizer.getToken(sourceToken)+"|"+
+                                                  WeightedEditDistanceTokenizer.getToken(targetToken));
+            }
+            costs[sourceToken * numTokens + targetToken] = cost;
+            max = Math.max(max, cost);
+         }
+         selfCosts[sourceToken] = costs[sourceToken * numTokens + sourceToken];
+      }
+      maxCost = max;
+      positionWeights = new PositionWeights(maxCost, smooth, INITIAL_POSITIONS);
+   }
+
+   public double getSmooth() {
+      return smooth;
+   }
+
+   /**
+    * Get the cost of a src/tar edit
+    * @param sourceToken source position
+    * @param targetToken target position
+    * @return cost
+    */
+   public int getCost(int sourceToken, int targetToken) {
+      return costs[sourceToken * WeightedEditDistanceTokenizer.NUM_TOKENS + targetToken];
+   }
+
+   /**
+    * The costs of all edits; the cost of a src/tar edit is at sourceToken*NUM_TOKENS+targetToken.  Don't modify it.
+    */
+   int[] getCostMatrix() {
+      return costs;
+   }
+
+   /**
+    * Get the weighted costs for at least the first positions positions
+    */
+   PositionWeights getPositionWeights(int positions) {
+      PositionWeights weights = positionWeights;
+      if (weights.getPositions() < positions) {
+         // another thread may do the same; either table will do
+         weights = new PositionWeights(maxCost, smooth, Math.max(positions, weights.getPositions() * 2));
+         positionWeights = weights;
+      }
+      return weights;
+   }
+
+   /**
+    * Return the positionally-weighted cost of turning the tokens into themselves, which normalizes the scores of the
+    * pairs they're in.  It depends only upon the tokens, so cache it with them when scoring a name many times.
+    * @param tokens tokens
+    * @return minimum cost
+    */
+   public double getMinCost(int[] tokens) {
+      double[][] weightedCosts = getPositionWeights(tokens.length).weightedCosts;
+      double cost = 0;
+      for (int i = 0; i < tokens.length; i++) {
+         cost += weightedCosts[selfCosts[tokens[i]]][i];
+      }
+      return cost;
+   }
+}
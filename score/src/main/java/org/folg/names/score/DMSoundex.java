@@ -16,14 +16,19 @@
 
 package org.folg.names.score;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Daitch-Mokotov soundex algorithm, following instructions at http://www.jewishgen.org/infofiles/soundex.html
  * However, that page recommends generating multiple codes for certain letter combinations (ch, ck, c, j, rs, and rz)
- * In order to return just a single code, the algorithm below generates the first code in all cases
+ * In order to return just a single code, encode generates the first code in all cases;
+ * encodeAll generates the codes for all combinations, packed by CodePacker.
+ * The code tables are compiled into a trie over the letters, which finds the longest letter group at each position in one walk.
+ * Instances are immutable and can be shared between threads
  */
 public class DMSoundex implements org.apache.commons.codec.StringEncoder
 {
@@ -86,37 +91,66 @@ public class DMSoundex implements org.apache.commons.codec.StringEncoder
       {"94", "rz", "rs"},
    };
 
-   private Map<String,String>[] startCodeMaps;
-   private Map<String,String>[] beforeVowelCodeMaps;
-   private Map<String,String>[] otherCodeMaps;
-   private int maxCodeLength;
+   // the alternate codes, in any position; j has no code except at the start, so it is skipped unless its alternate code is used
+   public static final String[][] ALTERNATE_CODE_ARRAY = {
+      {"4", "ch", "c", "j", "rs", "rz"},
+      {"45", "ck"},
+   };
 
-   @SuppressWarnings("unchecked")
-   private Map<String,String>[] generateMaps(String[][] codeArray) {
-      Map<String,String>[] maps = new HashMap[MAX_CODE_LEN];
+   private static final int START = 0;
+   private static final int BEFORE_VOWEL = 1;
+   private static final int OTHER = 2;
+   private static final int NUM_LETTERS = 26;
 
-      for (int i = 0; i < MAX_CODE_LEN; i++) {
-         maps[i] = new HashMap<String,String>();
+   // children[node * NUM_LETTERS + letter] is the child of node for that letter, or 0 (the root) if there isn't one
+   private static final int[] children;
+   // codes[context][node] is the code for the letter group ending at node, or null if there isn't one
+   private static final String[][] codes;
+   private static final String[] alternateCodes;
+
+   static {
+      String[][][] codeArrays = {START_CODE_ARRAY, BEFORE_VOWEL_CODE_ARRAY, OTHER_CODE_ARRAY, ALTERNATE_CODE_ARRAY};
+      int maxNodes = 1;
+      for (String[][] codeArray : codeArrays) {
+         for (String[] groups : codeArray) {
+            for (int i = 1; i < groups.length; i++) {
+               maxNodes += groups[i].length();
+            }
+         }
       }
-      for (String[] codes : codeArray) {
-         String code = codes[0];
-         for (int i = 1; i < codes.length; i++) {
-            int len = codes[i].length();
-            maps[len-1].put(codes[i], code);
+      int[] trie = new int[maxNodes * NUM_LETTERS];
+      String[][] trieCodes = new String[codeArrays.length][maxNodes];
+      int numNodes = 1;
+      for (int context = 0; context < codeArrays.length; context++) {
+         for (String[] groups : codeArrays[context]) {
+            for (int i = 1; i < groups.length; i++) {
+               int node = 0;
+               for (int j = 0; j < groups[i].length(); j++) {
+                  int child = node * NUM_LETTERS + groups[i].charAt(j) - 'a';
+                  if (trie[child] == 0) {
+                     trie[child] = numNodes++;
+                  }
+                  node = trie[child];
+               }
+               trieCodes[context][node] = groups[0];
+            }
          }
       }
-
-      return maps;
+      children = Arrays.copyOf(trie, numNodes * NUM_LETTERS);
+      codes = new String[3][];
+      for (int context = START; context <= OTHER; context++) {
+         codes[context] = Arrays.copyOf(trieCodes[context], numNodes);
+      }
+      alternateCodes = Arrays.copyOf(trieCodes[codeArrays.length-1], numNodes);
    }
 
+   private int maxCodeLength;
+
    public DMSoundex() {
       this(6);
    }
 
    public DMSoundex(int maxCodeLength) {
-      startCodeMaps = generateMaps(START_CODE_ARRAY);
-      beforeVowelCodeMaps = generateMaps(BEFORE_VOWEL_CODE_ARRAY);
-      otherCodeMaps = generateMaps(OTHER_CODE_ARRAY);
       this.maxCodeLength = maxCodeLength;
    }
 
@@ -124,42 +158,65 @@ public class DMSoundex implements org.apache.commons.codec.StringEncoder
       return encode((String)o);
    }
 
+   private static boolean isVowel(char c) {
+      return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+   }
+
+   private static void append(StringBuilder buf, String code, boolean prevSkipped) {
+      if (prevSkipped || code.length() != 1 || buf.length() == 0 || buf.charAt(buf.length()-1) != code.charAt(0)) {
+         buf.append(code);
+      }
+   }
+
    /**
-    *
-    * @param s must be romanized and in lower case
-    * @return
+    * Encode s starting at pos into buf
+    * @param allCodes if not null, also encode the alternate codes, and add the codes for all combinations to allCodes;
+    * otherwise generate the first code in buf
+    * @param branches the alternate branches already taken, as code@pos, so each one is encoded once
     */
-   public String encode(String s) {
-      StringBuilder buf = new StringBuilder();
-      int pos = 0;
-      boolean atBegin = true;
-      boolean prevSkipped = false;
-      while (pos < s.length() && buf.length() < maxCodeLength) {
-         boolean found = false;
-         for (int len = Math.min(s.length() - pos, MAX_CODE_LEN); len > 0; len--) {
-            int nextPos = pos+len;
-            String token = s.substring(pos, nextPos);
-            String code = null;
-            if (atBegin) {
-               code = startCodeMaps[len-1].get(token);
+   private void encode(String s, int pos, boolean atBegin, boolean prevSkipped, StringBuilder buf,
+                       List<String> allCodes, Set<String> branches) {
+      int length = s.length();
+      while (pos < length && buf.length() < maxCodeLength) {
+         // walk the trie to find the longest letter group with a code, and the longest with an alternate code
+         int node = 0;
+         int codeLen = 0;
+         String code = null;
+         int alternateLen = 0;
+         String alternateCode = null;
+         for (int len = 1; len <= MAX_CODE_LEN && pos+len <= length; len++) {
+            char c = s.charAt(pos+len-1);
+            if (c < 'a' || c > 'z') {
+               break;
+            }
+            node = children[node * NUM_LETTERS + c - 'a'];
+            if (node == 0) {
+               break;
             }
-            else if (nextPos < s.length() && Arrays.binarySearch(VOWELS, s.charAt(nextPos)) >= 0) {
-               code = beforeVowelCodeMaps[len-1].get(token);
+            int nextPos = pos+len;
+            int context = (atBegin ? START : nextPos < length && isVowel(s.charAt(nextPos)) ? BEFORE_VOWEL : OTHER);
+            if (codes[context][node] != null) {
+               codeLen = len;
+               code = codes[context][node];
             }
-            else {
-               code = otherCodeMaps[len-1].get(token);
+            if (alternateCodes[node] != null) {
+               alternateLen = len;
+               alternateCode = alternateCodes[node];
             }
-            if (code != null) {
-               if (prevSkipped || code.length() != 1 || buf.length() == 0 || buf.charAt(buf.length()-1) != code.charAt(0)) {
-                  buf.append(code);
-               }
-               pos = nextPos;
-               found = true;
-               break;
+         }
+         // the alternate applies when its letter group is the one that matched, or when nothing matched (j)
+         if (allCodes != null && alternateCode != null && alternateLen >= codeLen) {
+            StringBuilder alternateBuf = new StringBuilder(buf);
+            append(alternateBuf, alternateCode, prevSkipped);
+            // a run of j's can reach the same branch many ways
+            if (branches.add(alternateBuf.toString()+'@'+(pos+alternateLen))) {
+               encode(s, pos+alternateLen, false, false, alternateBuf, allCodes, branches);
             }
          }
          atBegin = false;
-         if (found) {
+         if (code != null) {
+            append(buf, code, prevSkipped);
+            pos += codeLen;
             prevSkipped = false;
          }
          else {
@@ -170,6 +227,63 @@ public class DMSoundex implements org.apache.commons.codec.StringEncoder
       if (buf.length() > maxCodeLength) {
          buf.setLength(maxCodeLength);
       }
+      if (allCodes != null) {
+         allCodes.add(buf.toString());
+      }
+   }
+
+   /**
+    *
+    * @param s must be romanized and in lower case
+    * @return
+    */
+   public String encode(String s) {
+      StringBuilder buf = new StringBuilder(maxCodeLength + 1);
+      encode(s, 0, true, false, buf, null, null);
       return buf.toString();
    }
+
+   /**
+    * Return the codes for all combinations of the alternate codes, packed by CodePacker
+    * Names match if their code sets intersect (see intersect).
+    * Codes are packed exactly unless maxCodeLength is more than 16.
+    * @param s must be romanized and in lower case
+    * @return distinct packed codes in ascending order; the packed code returned by encode is one of them
+    */
+   public long[] encodeAll(String s) {
+      List<String> allCodes = new ArrayList<String>();
+      encode(s, 0, true, false, new StringBuilder(maxCodeLength + 1), allCodes, new HashSet<String>());
+      long[] packed = new long[allCodes.size()];
+      for (int i = 0; i < packed.length; i++) {
+         packed[i] = CodePacker.pack(allCodes.get(i));
+      }
+      Arrays.sort(packed);
+      int cnt = 0;
+      for (int i = 0; i < packed.length; i++) {
+         if (cnt == 0 || packed[cnt-1] != packed[i]) {
+            packed[cnt++] = packed[i];
+         }
+      }
+      return (cnt == packed.length ? packed : Arrays.copyOf(packed, cnt));
+   }
+
+   /**
+    * Return true if two sets of codes returned by encodeAll have a code in common
+    */
+   public static boolean intersect(long[] codes1, long[] codes2) {
+      int i = 0;
+      int j = 0;
+      while (i < codes1.length && j < codes2.length) {
+         if (codes1[i] < codes2[j]) {
+            i++;
+         }
+         else if (codes1[i] > codes2[j]) {
+            j++;
+         }
+         else {
+            return true;
+         }
+      }
+      return false;
+   }
 }
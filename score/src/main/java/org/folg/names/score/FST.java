@@ -30,42 +30,106 @@ import java.util.logging.Logger;
 public class FST {
    private static Logger logger = Logger.getLogger("org.folg.names.score");
 
-   // holds the best getScore for each node
-   private int[][] score;
-   // holds the X position of the node yielding the best getScore so you can walk the best path backwards
-   private int[][] prevX;
-   // holds the Y position of the node yielding the best getScore so you can walk the best path backwards
-   private int[][] prevY;
+   // holds the best getScore for each node; node (x,y) is at x*width+y
+   private int[] score = new int[0];
+   // holds the node yielding the best getScore so you can walk the best path backwards
+   private int[] prev = new int[0];
+   // holds the edit costs along the best path
+   private int[] scoreBuffer = new int[0];
+   // number of nodes in each row
+   private int width;
+   // number of rows the scoring tables hold
+   private int rows;
+   // for getPathScore: the number of edits and the weighted cost of the path to each node computeBestPath would pick,
+   // for this FST and for the FST with source and target swapped
+   private int[] forwardEdits = new int[0];
+   private double[] forwardWeightedScore = new double[0];
+   private int[] reverseEdits = new int[0];
+   private double[] reverseWeightedScore = new double[0];
+   // for getMinPathScore: the lowest weighted cost of reaching each node (x,y) at the lowest cost in exactly i edits,
+   // at node*depth+i-max(x,y), since every path to (x,y) takes between max(x,y) and x+y edits
+   private double[] stepWeightedScore = new double[0];
+   private int depth;
+   // for initTarget: the number of tokens in the longest source
+   private int maxSourceLength;
+   // for scoring after initScore: keep just the current and previous rows of the tables, with row x at x & 1
+   private boolean rollingRows;
    // source tokens
    private int[] source;
    // target tokens
    private int[] target;
 
+   /**
+    * Create a finite state transducer to reuse for many name pairs; call init or initScore before each pair
+    */
+   public FST() {
+   }
+
    /**
     * Create a finite state transducer.
     */
    public FST(int[] sourceTokens, int[] targetTokens) {
+      init(sourceTokens, targetTokens);
+   }
+
+   /**
+    * Set up for a new pair of names, reusing the tables if they are large enough
+    * @param sourceTokens source tokens
+    * @param targetTokens target tokens
+    */
+   public void init(int[] sourceTokens, int[] targetTokens) {
       this.source = sourceTokens;
       this.target = targetTokens;
-      score = new int[source.length+1][target.length+1];
-      prevX = new int[source.length+1][target.length+1];
-      prevY = new int[source.length+1][target.length+1];
+      width = target.length+1;
+      rows = source.length+1;
+      rollingRows = false;
+      maxSourceLength = -1;
+      int size = rows * width;
+      if (score.length < size) {
+         score = new int[size];
+      }
+      if (prev.length < size) {
+         prev = new int[size];
+      }
+      if (scoreBuffer.length < source.length+target.length) {
+         scoreBuffer = new int[source.length+target.length];
+      }
       reset();
    }
 
+   /**
+    * Set up for a new pair of names to call getPathScore or getMinPathScore on, and nothing else.
+    * They carry the weighted costs forward a row at a time instead of walking back along the best path,
+    * so this keeps only two rows of the tables and no back-pointers.  The tables then grow with the length of the
+    * target instead of the product of the lengths; getMinPathScore's table is still larger by a factor of the shorter
+    * name's length plus 1, since it keeps a cost for each number of edits.
+    * Use init for computeBestPath, getBestPathScore, and updateCounts during training.
+    * @param sourceTokens source tokens
+    * @param targetTokens target tokens
+    */
+   public void initScore(int[] sourceTokens, int[] targetTokens) {
+      this.source = sourceTokens;
+      this.target = targetTokens;
+      width = target.length+1;
+      rows = 2;
+      rollingRows = true;
+      maxSourceLength = -1;
+      if (score.length < rows * width) {
+         score = new int[rows * width];
+      }
+   }
+
    public void reset() {
-      for (int x = 0; x < source.length+1; x++) {
-         for (int y = 0; y < target.length+1; y++) {
-            score[x][y] = Integer.MAX_VALUE;
-            prevX[x][y] = -1;
-            prevY[x][y] = -1;
-         }
+      int size = (source.length+1) * width;
+      for (int i = 0; i < size; i++) {
+         score[i] = Integer.MAX_VALUE;
+         prev[i] = -1;
       }
-      score[0][0] = 0;
+      score[0] = 0;
    }
 
    // update score for a node in the graph
-   private void updateScore(int fromX, int fromY, int toX, int toY, int newScore) {
+   private void updateScore(int from, int to, int newScore) {
       // If you're reading through this file, the following comment is important:
 
       // Normally, viterbi simply compares newScore < oldScore to compute the lowest-cost path.
@@ -80,18 +144,14 @@ public class FST {
       // In tests on millions of name pairs, this approach does not produce the minimum cost about 1:10,000 times.
       // That is, calling getBestPathScore on FST(source,target) != getBestPathScore on FST(target,source) about once
       // every 10,000 pairs.
-      // If you want to guarantee the minimum cost, create both FST's and take the minimum getBestPathScore.
-      // That's what FeaturesGenerator does
+      // WeightedEditDistance takes the minimum of both directions, which getPathScore computes in a single pass.
+      // If you want to guarantee the minimum cost, call getMinPathScore instead.
 
-      // If someone can figure out how to modify the viterbi algorithm to take positional weight into account
-      // without introducing floating-point arithmetic, let me know.
-
-      int oldScore = score[toX][toY];
+      int oldScore = score[to];
       if (newScore < oldScore ||
-          (newScore == oldScore && score[fromX][fromY] < score[prevX[toX][toY]][prevY[toX][toY]])) {
-         score[toX][toY] = newScore;
-         prevX[toX][toY] = fromX;
-         prevY[toX][toY] = fromY;
+          (newScore == oldScore && score[from] < score[prev[to]])) {
+         score[to] = newScore;
+         prev[to] = from;
       }
    }
 
@@ -102,21 +162,22 @@ public class FST {
    public void computeBestPath(WeightedEdits we) {
       for (int x = 0; x <= source.length; x++) {
          for (int y = 0; y <= target.length; y++) {
-            int curScore = score[x][y];
+            int from = x * width + y;
+            int curScore = score[from];
 
             // calc getScore for empty/targetChar edit
             if (y < target.length) {
-               updateScore(x, y, x, y+1, curScore + we.getCost(WeightedEditDistanceTokenizer.EMPTY_TOKEN, target[y]));
+               updateScore(from, from+1, curScore + we.getCost(WeightedEditDistanceTokenizer.EMPTY_TOKEN, target[y]));
             }
 
             // calc getScore for sourceChar/empty edit
             if (x < source.length) {
-               updateScore(x, y, x+1, y, curScore + we.getCost(source[x], WeightedEditDistanceTokenizer.EMPTY_TOKEN));
+               updateScore(from, from+width, curScore + we.getCost(source[x], WeightedEditDistanceTokenizer.EMPTY_TOKEN));
             }
 
             // calc getScore for sourceChar/targetChar edit
             if (x < source.length && y < target.length) {
-               updateScore(x, y, x+1, y+1, curScore + we.getCost(source[x], target[y]));
+               updateScore(from, from+width+1, curScore + we.getCost(source[x], target[y]));
             }
          }
       }
@@ -126,10 +187,26 @@ public class FST {
       return (from == to ? WeightedEditDistanceTokenizer.EMPTY_TOKEN : tokens[from]);
    }
 
-   private double getMinCost(int[] tokens, WeightedEdits we, double smooth) {
-      double cost = 0;
+   // lowest cost of inserting or deleting any of the tokens
+   private int getMinInsertDeleteCost(int[] tokens, int[] costs) {
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      int emptyToken = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      int cost = Integer.MAX_VALUE;
       for (int i = 0; i < tokens.length; i++) {
-         cost += (we.getCost(tokens[i],tokens[i]) * 1.0) / (i+smooth);
+         cost = Math.min(cost, costs[tokens[i] * numTokens + emptyToken]);
+      }
+      return cost;
+   }
+
+   // lowest cost of substituting any source token with any target token
+   private int getMinSubstituteCost(int[] costs) {
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      int cost = Integer.MAX_VALUE;
+      for (int x = 0; x < source.length; x++) {
+         int row = source[x] * numTokens;
+         for (int y = 0; y < target.length; y++) {
+            cost = Math.min(cost, costs[row + target[y]]);
+         }
       }
       return cost;
    }
@@ -144,10 +221,10 @@ public class FST {
       // start from the end
       int toX = source.length;
       int toY = target.length;
-      int[] scoreBuffer = new int[toX+toY];
       while (toX > 0 || toY > 0) {
-         int fromX = prevX[toX][toY];
-         int fromY = prevY[toX][toY];
+         int from = prev[toX * width + toY];
+         int fromX = from / width;
+         int fromY = from - fromX * width;
          int cost = we.getCost(getToken(source, fromX, toX), getToken(target, fromY, toY));
          scoreBuffer[idx++] = cost;
          //logger.info("["+getToken(source,fromX,toX)+","+getToken(target,fromY,toY)+"]="+cost);
@@ -156,8 +233,9 @@ public class FST {
       }
 
       // return normalized score
-      double sourceCost = getMinCost(source, we, smooth);
-      double targetCost = getMinCost(target, we, smooth);
+      CompiledWeightedEdits edits = we.compile(smooth);
+      double sourceCost = edits.getMinCost(source);
+      double targetCost = edits.getMinCost(target);
       double totalCost = 0;
       int idx1 = idx - 1;
       for (int i = 0; i < idx; i++) {
@@ -166,6 +244,420 @@ public class FST {
       return totalCost / Math.max(sourceCost, targetCost);
    }
 
+   // relax the weighted scores of node (x,y), whose paths take toLo or more edits, from a neighbor that lies on
+   // a lowest-cost path to it and whose paths take fromLo..fromHi edits
+   private void updateStepWeightedScores(int from, int fromLo, int fromHi, int to, int toLo, double[] weightedCost) {
+      // a path reaching the neighbor in i edits reaches this node in i+1 edits; that edit costs weightedCost[i]
+      for (int i = fromLo; i <= fromHi; i++) {
+         double newWeightedScore = stepWeightedScore[from+i-fromLo] + weightedCost[i];
+         if (newWeightedScore < stepWeightedScore[to+i+1-toLo]) {
+            stepWeightedScore[to+i+1-toLo] = newWeightedScore;
+         }
+      }
+   }
+
+   /**
+    * Return the smaller of the normalized scores getBestPathScore returns for this FST and for the FST with
+    * source and target swapped, which is how WeightedEditDistance scores a pair; call instead of computeBestPath.
+    * Each node follows the predecessor computeBestPath would pick and carries forward the number of edits and the
+    * weighted cost of the path to it, so there's no need for back-pointers.  Since the edit costs are symmetric,
+    * the FST with source and target swapped has the same cost to each node and differs only in which of the tied
+    * predecessors it picks, so both directions are scored in a single pass over the table.
+    * @param we specified WeightedEdits
+    * @param smooth positional weight smoothing
+    * @return normalized score 0..1
+    */
+   public double getPathScore(WeightedEdits we, double smooth) {
+      CompiledWeightedEdits edits = we.compile(smooth);
+      return getPathScore(edits, edits.getMinCost(source), edits.getMinCost(target), Double.POSITIVE_INFINITY);
+   }
+
+   /**
+    * Same as getPathScore(we, smooth), but with the edits compiled and the names' minimum costs cached, and giving up
+    * as soon as the score is sure to be greater than maxScore.  See getMinPathScore for how the table is bounded.
+    * @param edits compiled edits
+    * @param sourceMinCost edits.getMinCost(source tokens)
+    * @param targetMinCost edits.getMinCost(target tokens)
+    * @param maxScore highest score of interest
+    * @return normalized score 0..1, or Double.POSITIVE_INFINITY if the score is greater than maxScore
+    */
+   public double getPathScore(CompiledWeightedEdits edits, double sourceMinCost, double targetMinCost, double maxScore) {
+      return getScore(edits, sourceMinCost, targetMinCost, maxScore, false);
+   }
+
+   /**
+    * Return a normalized score 0..1 for the best path, computed exactly in a single pass; call instead of computeBestPath.
+    * The best path is the one computeBestPath tries to find: it has the lowest total edit cost, and of those paths,
+    * the lowest positionally-weighted cost.  Viterbi can't compare weighted costs exactly because the weight of an edit
+    * depends upon how many edits come before it, so here each node keeps the lowest weighted cost for each number of edits
+    * leading to it.  Only paths with the lowest cost to each node are followed, since the best path's prefixes all
+    * have the lowest cost to their nodes.  Since the edit costs are symmetric, the score is the same whichever name
+    * is the source, so there's no need to also score target to source.
+    * The score is never higher than getPathScore's, and is lower for about 1.5% of surname pairs and 1.1% of
+    * given-name pairs.  Keeping a cost for each number of edits makes it slower than getPathScore.
+    * @param we specified WeightedEdits
+    * @param smooth positional weight smoothing
+    * @return normalized score 0..1
+    */
+   public double getMinPathScore(WeightedEdits we, double smooth) {
+      return getMinPathScore(we, smooth, Double.POSITIVE_INFINITY);
+   }
+
+   /**
+    * Same as getMinPathScore, but give up as soon as the score is sure to be greater than maxScore
+    * @param we specified WeightedEdits
+    * @param smooth positional weight smoothing
+    * @param maxScore highest score of interest
+    * @return normalized score 0..1, or Double.POSITIVE_INFINITY if the score is greater than maxScore
+    */
+   public double getMinPathScore(WeightedEdits we, double smooth, double maxScore) {
+      CompiledWeightedEdits edits = we.compile(smooth);
+      return getMinPathScore(edits, edits.getMinCost(source), edits.getMinCost(target), maxScore);
+   }
+
+   /**
+    * Same as getMinPathScore(we, smooth, maxScore), but with the edits compiled and the names' minimum costs cached.
+    * Edit costs aren't negative, so the best path costs at least as much as the cheapest path to any node in a row.
+    * Also, a path with k inserts and deletes has (source.length+target.length-k)/2 substitutions, so its weighted cost
+    * is at least that of the cheapest such edits, with the cheaper kind first.  That bound grows with k, so only the
+    * nodes in a band around the diagonal (Ukkonen) need to be filled in, since reaching node (x,y) takes at least
+    * |x-y| + |(source.length-x)-(target.length-y)| inserts and deletes.
+    * @param edits compiled edits
+    * @param sourceMinCost edits.getMinCost(source tokens)
+    * @param targetMinCost edits.getMinCost(target tokens)
+    * @param maxScore highest score of interest
+    * @return normalized score 0..1, or Double.POSITIVE_INFINITY if the score is greater than maxScore
+    */
+   public double getMinPathScore(CompiledWeightedEdits edits, double sourceMinCost, double targetMinCost, double maxScore) {
+      return getScore(edits, sourceMinCost, targetMinCost, maxScore, true);
+   }
+
+   // getPathScore if exact is false, getMinPathScore if it's true
+   private double getScore(CompiledWeightedEdits edits, double sourceMinCost, double targetMinCost, double maxScore,
+                           boolean exact) {
+      double normalizer = Math.max(sourceMinCost, targetMinCost);
+      int totalLength = source.length + target.length;
+      CompiledWeightedEdits.PositionWeights weights = edits.getPositionWeights(totalLength);
+      int[] costs = edits.getCostMatrix();
+      if (maxScore == Double.POSITIVE_INFINITY) {
+         return getCost(costs, weights, Double.POSITIVE_INFINITY, -source.length, target.length, exact) / normalizer;
+      }
+      // allow for rounding, so we never give up on a path that would score maxScore
+      double maxTotalCost = maxScore * normalizer * (1 + 1e-9);
+
+      // find the most inserts and deletes a path scoring maxScore or less could have,
+      // and the lowest cost of any path with more
+      int lengthDiff = target.length - source.length;
+      int minInsertDeleteCost = Math.min(getMinInsertDeleteCost(source, costs), getMinInsertDeleteCost(target, costs));
+      int minSubstituteCost = getMinSubstituteCost(costs);
+      double[] positionWeightSum = weights.weightSums;
+      int maxInsertDeletes = -1;
+      int minOutsideCost = Integer.MAX_VALUE;
+      for (int k = Math.abs(lengthDiff); k <= totalLength; k += 2) {
+         int substitutes = (totalLength - k) / 2;
+         int minPathCost = k * minInsertDeleteCost + substitutes * minSubstituteCost;
+         // earlier edits weigh more, so the lowest weighted cost puts the cheaper kind of edit first
+         int cheaperEdits = (minSubstituteCost <= minInsertDeleteCost ? substitutes : k);
+         double minWeightedCost = Math.min(minSubstituteCost, minInsertDeleteCost) * positionWeightSum[cheaperEdits] +
+                 Math.max(minSubstituteCost, minInsertDeleteCost) * (positionWeightSum[substitutes+k] - positionWeightSum[cheaperEdits]);
+         if (minWeightedCost <= maxTotalCost) {
+            maxInsertDeletes = k;
+            minOutsideCost = Integer.MAX_VALUE;
+         }
+         else {
+            minOutsideCost = Math.min(minOutsideCost, minPathCost);
+         }
+      }
+      if (maxInsertDeletes < 0) {
+         return Double.POSITIVE_INFINITY;
+      }
+      // a path that leaves the diagonals between 0 and lengthDiff has to come back
+      int halfWidth = (maxInsertDeletes - Math.abs(lengthDiff)) / 2;
+      double totalCost = getCost(costs, weights, maxTotalCost,
+                                 Math.min(0, lengthDiff) - halfWidth, Math.max(0, lengthDiff) + halfWidth, exact);
+      if (totalCost > maxTotalCost) {
+         return Double.POSITIVE_INFINITY;
+      }
+      // if a path outside the band could cost as little, the best path may have been missed,
+      // or a node along it may have a tied predecessor outside the band that computeBestPath would pick
+      if (score[getRow(source.length) * width + target.length] >= minOutsideCost) {
+         totalCost = getCost(costs, weights, maxTotalCost, -source.length, target.length, exact);
+         if (totalCost > maxTotalCost) {
+            return Double.POSITIVE_INFINITY;
+         }
+      }
+      return totalCost / normalizer;
+   }
+
+   // return the weighted cost of the best path through the nodes (x,y) with bandLo <= y-x <= bandHi,
+   // or Double.POSITIVE_INFINITY once it's sure to be greater than maxTotalCost
+   private double getCost(int[] costs, CompiledWeightedEdits.PositionWeights weights, double maxTotalCost,
+                          int bandLo, int bandHi, boolean exact) {
+      if (exact) {
+         initStepWeightedScore();
+         return getMinPathCost(costs, weights.weightedCosts, maxTotalCost, bandLo, bandHi, 0);
+      }
+      initPathScores();
+      return getPathCost(costs, weights.weightedCosts, maxTotalCost, bandLo, bandHi, 0);
+   }
+
+   // where row x of the table is kept
+   private int getRow(int x) {
+      return (rollingRows ? x & 1 : x);
+   }
+
+   private void initPathScores() {
+      int size = rows * width;
+      if (forwardEdits.length < size) {
+         forwardEdits = new int[size];
+         forwardWeightedScore = new double[size];
+         reverseEdits = new int[size];
+         reverseWeightedScore = new double[size];
+      }
+   }
+
+   private void initStepWeightedScore() {
+      // node (x,y) has a weighted cost for each of min(x,y)+1 numbers of edits.
+      // After initTarget, keep the same depth for all sources so the rows can be reused
+      depth = Math.min(maxSourceLength < 0 ? source.length : maxSourceLength, target.length) + 1;
+      int size = rows * width * depth;
+      if (stepWeightedScore.length < size) {
+         stepWeightedScore = new double[size];
+      }
+   }
+
+   // fill in rows fromRow..source.length, following the predecessor computeBestPath would pick in each direction;
+   // the earlier rows must already be filled in
+   private double getPathCost(int[] costs, double[][] weightedCosts, double maxTotalCost, int bandLo, int bandHi, int fromRow) {
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      int emptyToken = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      if (fromRow == 0) {
+         score[0] = 0;
+         forwardEdits[0] = 0;
+         forwardWeightedScore[0] = 0;
+         reverseEdits[0] = 0;
+         reverseWeightedScore[0] = 0;
+      }
+
+      for (int x = fromRow; x <= source.length; x++) {
+         double rowMinCost = (x == 0 ? 0 : Double.POSITIVE_INFINITY);
+         int row = getRow(x) * width;
+         // only read when x > 0
+         int prevRow = getRow(x-1) * width;
+         int yHi = Math.min(target.length, x + bandHi);
+         for (int y = Math.max(x == 0 ? 1 : 0, x + bandLo); y <= yHi; y++) {
+            int node = row + y;
+            int up = prevRow + y;
+            int insertCost = 0;
+            int deleteCost = 0;
+            int substituteCost = 0;
+            int insertScore = Integer.MAX_VALUE;
+            int deleteScore = Integer.MAX_VALUE;
+            int substituteScore = Integer.MAX_VALUE;
+            // nodes outside the band are never reached
+            if (y > 0 && y - x > bandLo) {
+               insertCost = costs[emptyToken * numTokens + target[y-1]];
+               insertScore = score[node-1] + insertCost;
+            }
+            if (x > 0 && y - x < bandHi) {
+               deleteCost = costs[source[x-1] * numTokens + emptyToken];
+               deleteScore = score[up] + deleteCost;
+            }
+            if (x > 0 && y > 0) {
+               substituteCost = costs[source[x-1] * numTokens + target[y-1]];
+               substituteScore = score[up-1] + substituteCost;
+            }
+            int bestScore = Math.min(insertScore, Math.min(deleteScore, substituteScore));
+            score[node] = bestScore;
+
+            // updateScore keeps the first of the lowest-cost predecessors that itself has the lowest score,
+            // and computeBestPath offers them in the order substitute, delete, insert;
+            // with source and target swapped, deletes become inserts and are offered last
+            int substitutePrev = (substituteScore == bestScore ? score[up-1] : Integer.MAX_VALUE);
+            int deletePrev = (deleteScore == bestScore ? score[up] : Integer.MAX_VALUE);
+            int insertPrev = (insertScore == bestScore ? score[node-1] : Integer.MAX_VALUE);
+            boolean substitute = (substitutePrev <= deletePrev && substitutePrev <= insertPrev);
+            int from;
+            int cost;
+            if (substitute) {
+               from = up-1;
+               cost = substituteCost;
+            }
+            else if (deletePrev <= insertPrev) {
+               from = up;
+               cost = deleteCost;
+            }
+            else {
+               from = node-1;
+               cost = insertCost;
+            }
+            forwardEdits[node] = forwardEdits[from] + 1;
+            forwardWeightedScore[node] = forwardWeightedScore[from] + weightedCosts[cost][forwardEdits[from]];
+            if (substitute) {
+               from = up-1;
+               cost = substituteCost;
+            }
+            else if (insertPrev <= deletePrev) {
+               from = node-1;
+               cost = insertCost;
+            }
+            else {
+               from = up;
+               cost = deleteCost;
+            }
+            reverseEdits[node] = reverseEdits[from] + 1;
+            reverseWeightedScore[node] = reverseWeightedScore[from] + weightedCosts[cost][reverseEdits[from]];
+            rowMinCost = Math.min(rowMinCost, Math.min(forwardWeightedScore[node], reverseWeightedScore[node]));
+         }
+         // every path goes through this row
+         if (rowMinCost > maxTotalCost) {
+            return Double.POSITIVE_INFINITY;
+         }
+      }
+
+      int last = getRow(source.length) * width + target.length;
+      return Math.min(forwardWeightedScore[last], reverseWeightedScore[last]);
+   }
+
+   // fill in rows fromRow..source.length; the earlier rows must already be filled in
+   private double getMinPathCost(int[] costs, double[][] weightedCosts, double maxTotalCost, int bandLo, int bandHi, int fromRow) {
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      int emptyToken = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      if (fromRow == 0) {
+         score[0] = 0;
+         stepWeightedScore[0] = 0;
+      }
+
+      for (int x = fromRow; x <= source.length; x++) {
+         double rowMinCost = (x == 0 ? 0 : Double.POSITIVE_INFINITY);
+         int row = getRow(x) * width;
+         // only read when x > 0
+         int prevRow = getRow(x-1) * width;
+         int yHi = Math.min(target.length, x + bandHi);
+         for (int y = Math.max(x == 0 ? 1 : 0, x + bandLo); y <= yHi; y++) {
+            int node = row + y;
+            int up = prevRow + y;
+            int insertCost = 0;
+            int deleteCost = 0;
+            int substituteCost = 0;
+            int insertScore = Integer.MAX_VALUE;
+            int deleteScore = Integer.MAX_VALUE;
+            int substituteScore = Integer.MAX_VALUE;
+            // nodes outside the band are never reached
+            if (y > 0 && y - x > bandLo) {
+               insertCost = costs[emptyToken * numTokens + target[y-1]];
+               insertScore = score[node-1] + insertCost;
+            }
+            if (x > 0 && y - x < bandHi) {
+               deleteCost = costs[source[x-1] * numTokens + emptyToken];
+               deleteScore = score[up] + deleteCost;
+            }
+            if (x > 0 && y > 0) {
+               substituteCost = costs[source[x-1] * numTokens + target[y-1]];
+               substituteScore = score[up-1] + substituteCost;
+            }
+            int bestScore = Math.min(insertScore, Math.min(deleteScore, substituteScore));
+            score[node] = bestScore;
+
+            int to = node * depth;
+            int toLo = Math.max(x, y);
+            int toSize = Math.min(x, y) + 1;
+            for (int i = 0; i < toSize; i++) {
+               stepWeightedScore[to+i] = Double.POSITIVE_INFINITY;
+            }
+            if (insertScore == bestScore) {
+               updateStepWeightedScores((node-1) * depth, Math.max(x, y-1), x+y-1, to, toLo, weightedCosts[insertCost]);
+            }
+            if (deleteScore == bestScore) {
+               updateStepWeightedScores(up * depth, Math.max(x-1, y), x+y-1, to, toLo, weightedCosts[deleteCost]);
+            }
+            if (substituteScore == bestScore) {
+               updateStepWeightedScores((up-1) * depth, Math.max(x-1, y-1), x+y-2, to, toLo, weightedCosts[substituteCost]);
+            }
+            for (int i = 0; i < toSize; i++) {
+               rowMinCost = Math.min(rowMinCost, stepWeightedScore[to+i]);
+            }
+         }
+         // every path goes through this row
+         if (rowMinCost > maxTotalCost) {
+            return Double.POSITIVE_INFINITY;
+         }
+      }
+
+      // pick the lowest weighted cost to the last node over all numbers of edits
+      int last = (getRow(source.length) * width + target.length) * depth;
+      double totalCost = Double.POSITIVE_INFINITY;
+      for (int i = Math.min(source.length, target.length); i >= 0; i--) {
+         totalCost = Math.min(totalCost, stepWeightedScore[last+i]);
+      }
+      return totalCost;
+   }
+
+   /**
+    * Set up to score many sources against one target, calling getPathScore or getMinPathScore(sourceTokens, sharedTokens, ...)
+    * for each source.  The rows of the table for a source depend only upon the tokens of the source up to that row,
+    * so when the sources are sorted, the rows for the tokens a source shares with the previous one are reused.
+    * @param targetTokens target tokens
+    * @param maxSourceLength number of tokens in the longest source
+    */
+   public void initTarget(int[] targetTokens, int maxSourceLength) {
+      this.target = targetTokens;
+      width = target.length+1;
+      rows = maxSourceLength+1;
+      rollingRows = false;
+      this.maxSourceLength = maxSourceLength;
+      if (score.length < rows * width) {
+         score = new int[rows * width];
+      }
+   }
+
+   /**
+    * Return the same normalized score as getPathScore for a source against the target passed to initTarget
+    * @param sourceTokens source tokens
+    * @param sharedTokens number of leading tokens this source shares with the previous source passed in since initTarget,
+    * 0 for the first source
+    * @param edits compiled edits
+    * @param sourceMinCost edits.getMinCost(sourceTokens)
+    * @param targetMinCost edits.getMinCost(target tokens)
+    * @return normalized score
+    */
+   public double getPathScore(int[] sourceTokens, int sharedTokens, CompiledWeightedEdits edits,
+                              double sourceMinCost, double targetMinCost) {
+      return getScore(sourceTokens, sharedTokens, edits, sourceMinCost, targetMinCost, false);
+   }
+
+   /**
+    * Return the same normalized score as getMinPathScore for a source against the target passed to initTarget
+    * @param sourceTokens source tokens
+    * @param sharedTokens number of leading tokens this source shares with the previous source passed in since initTarget,
+    * 0 for the first source
+    * @param edits compiled edits
+    * @param sourceMinCost edits.getMinCost(sourceTokens)
+    * @param targetMinCost edits.getMinCost(target tokens)
+    * @return normalized score
+    */
+   public double getMinPathScore(int[] sourceTokens, int sharedTokens, CompiledWeightedEdits edits,
+                                 double sourceMinCost, double targetMinCost) {
+      return getScore(sourceTokens, sharedTokens, edits, sourceMinCost, targetMinCost, true);
+   }
+
+   private double getScore(int[] sourceTokens, int sharedTokens, CompiledWeightedEdits edits,
+                           double sourceMinCost, double targetMinCost, boolean exact) {
+      this.source = sourceTokens;
+      double[][] weightedCosts = edits.getPositionWeights(source.length + target.length).weightedCosts;
+      int fromRow = (sharedTokens == 0 ? 0 : sharedTokens+1);
+      double totalCost;
+      if (exact) {
+         initStepWeightedScore();
+         totalCost = getMinPathCost(edits.getCostMatrix(), weightedCosts, Double.POSITIVE_INFINITY, -source.length, target.length, fromRow);
+      }
+      else {
+         initPathScores();
+         totalCost = getPathCost(edits.getCostMatrix(), weightedCosts, Double.POSITIVE_INFINITY, -source.length, target.length, fromRow);
+      }
+      return totalCost / Math.max(sourceMinCost, targetMinCost);
+   }
+
    /**
     * Update counts in the specified WeightedEdits.  Call after computeBestPath during training.
     * @param we specified WeightedEdits
@@ -175,8 +667,9 @@ public class FST {
       int toX = source.length;
       int toY = target.length;
       while (toX > 0 || toY > 0) {
-         int fromX = prevX[toX][toY];
-         int fromY = prevY[toX][toY];
+         int from = prev[toX * width + toY];
+         int fromX = from / width;
+         int fromY = from - fromX * width;
          we.addCount(getToken(source, fromX, toX), getToken(target, fromY, toY), 1);
          toX = fromX;
          toY = fromY;
@@ -29,6 +29,13 @@ public class Features {
    public double levenstein; // levenstein
 
    public Features() {
+      clear();
+   }
+
+   /**
+    * Reset all features to zero so this object can be reused for another pair
+    */
+   public void clear() {
       weightedEditDistance = nysiis = soundex = refinedSoundex = dmSoundex = levenstein =
               0.0;
    }
@@ -16,11 +16,12 @@
 
 package org.folg.names.score;
 
-import com.wcohen.ss.*;
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.language.RefinedSoundex;
 import org.apache.commons.codec.language.Soundex;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.logging.Logger;
 
 /**
@@ -36,7 +37,14 @@ public class FeaturesGenerator {
    private final RefinedSoundex refinedSoundex = new RefinedSoundex();
    private final DMSoundex dmSoundex = new DMSoundex();
    private final Nysiis nysiis = new Nysiis();
-   private final Levenstein levenstein = new Levenstein();
+   // setFeatures may be called on several threads at once
+   private final ThreadLocal<BitParallelLevenstein> levenstein = new ThreadLocal<BitParallelLevenstein>() {
+      @Override
+      protected BitParallelLevenstein initialValue() {
+         return new BitParallelLevenstein();
+      }
+   };
+   private CodesDictionary codesDictionary = null;
 
    /**
     * Create a new FeaturesGenerator
@@ -45,21 +53,81 @@ public class FeaturesGenerator {
    public FeaturesGenerator(final boolean isSurname) {
       this.isSurname = isSurname;
       wed = new WeightedEditDistance(isSurname);
+
+      // read the codes dictionary if it is available
+      String prefix = isSurname ? "surname" : "givenname";
+      InputStream dictionaryStream = getClass().getClassLoader().getResourceAsStream(prefix + "Codes.bin");
+      if (dictionaryStream != null) {
+         try {
+            setCodesDictionary(CodesDictionary.read(dictionaryStream));
+         }
+         catch (IOException e) {
+            logger.warning("Ignoring codes dictionary: "+e.getMessage());
+         }
+         finally {
+            try {
+               dictionaryStream.close();
+            }
+            catch (IOException e) {
+               // ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Look up the codes for known names in a prebuilt dictionary instead of computing them
+    * A dictionary named surnameCodes.bin or givennameCodes.bin on the classpath is used automatically;
+    * call this to use a memory-mapped dictionary instead
+    * @param codesDictionary dictionary built for the same name type, or null to always compute codes
+    */
+   public void setCodesDictionary(CodesDictionary codesDictionary) {
+      if (codesDictionary != null && codesDictionary.isSurname() != isSurname) {
+         throw new IllegalArgumentException("Codes dictionary was built for "+(codesDictionary.isSurname() ? "surnames" : "given names"));
+      }
+      this.codesDictionary = codesDictionary;
    }
 
-   private double codeScorer(String code1, String code2) {
-      return code1.equals(code2) ? 1.0 : 0.0;
+   /**
+    * Compute the weighted edit distance feature from the exact minimum path cost; see WeightedEditDistance.setExactMinimum
+    * @param exactMinimum true to use the exact minimum
+    */
+   public void setExactWeightedEditDistance(boolean exactMinimum) {
+      wed.setExactMinimum(exactMinimum);
+   }
+
+   private double codeScorer(long packedCode1, String code1, long packedCode2, String code2) {
+      return CodePacker.sameCode(packedCode1, code1, packedCode2, code2) ? 1.0 : 0.0;
    }
 
    public Codes getCodes(String name) {
+      if (codesDictionary != null) {
+         Codes codes = codesDictionary.get(name);
+         if (codes != null) {
+            // depends upon the model, so it isn't in the dictionary
+            codes.wedMinCost = wed.getMinCost(codes.wedTokens);
+            return codes;
+         }
+      }
+      return computeCodes(name);
+   }
+
+   /**
+    * Compute the codes for a name without looking it up in the codes dictionary
+    * @param name normalized name piece
+    * @return codes
+    */
+   public Codes computeCodes(String name) {
       Codes codes = new Codes();
       codes.wedTokens = wed.tokenize(name);
+      codes.wedMinCost = wed.getMinCost(codes.wedTokens);
       if (isSurname) {
          codes.nysCode = nysiis.encode(name);
       }
       codes.refSdxCode = refinedSoundex.encode(name);
       codes.dmSdxCode = dmSoundex.encode(name);
       codes.sdxCode = soundex.encode(name);
+      codes.pack();
       return codes;
    }
 
@@ -74,21 +142,130 @@ public class FeaturesGenerator {
    public void setFeatures(String name1, Codes codes1, String name2, Codes codes2, Features features) {
       try {
          features.weightedEditDistance = wed.getScore(codes1.wedTokens, codes2.wedTokens);
-         // See comment in FST.java to understand why we do this
-         double reverseDistance = wed.getScore(codes2.wedTokens, codes1.wedTokens);
-         if (features.weightedEditDistance > reverseDistance) {
-            features.weightedEditDistance = reverseDistance;
+         setCodeFeatures(codes1, codes2, features);
+         features.levenstein = levenstein.get().score(name1, name2);
+      }
+      catch (IllegalArgumentException e) {
+         logger.severe("Illegal argument for pair: "+name1+","+name2+" "+e);
+      }
+   }
+
+   /**
+    * Set the features for a name pair without allocating, using buffers in the workspace
+    * @param name1 head-name to test
+    * @param codes1 codes for head-name to test
+    * @param name2 name to test
+    * @param codes2 codes for name to test
+    * @param features Features struct to set
+    * @param workspace buffers for this thread
+    */
+   void setFeatures(String name1, Codes codes1, String name2, Codes codes2, Features features, ScoringWorkspace workspace) {
+      try {
+         features.weightedEditDistance = wed.getScore(codes1, codes2, workspace.fst, Double.POSITIVE_INFINITY);
+         setCodeFeatures(codes1, codes2, features);
+         features.levenstein = workspace.levenstein(name1, name2);
+      }
+      catch (IllegalArgumentException e) {
+         logger.severe("Illegal argument for pair: "+name1+","+name2+" "+e);
+      }
+   }
+
+   /**
+    * Compute the weighted edit distance between a query and every name in a candidate set
+    * @param codes1 codes for the query
+    * @param candidates candidate set
+    * @param workspace buffers for this thread
+    * @param weightedEditDistances set to the weighted edit distance for each name
+    */
+   void setWeightedEditDistances(Codes codes1, CandidateSet candidates, ScoringWorkspace workspace, double[] weightedEditDistances) {
+      wed.getScores(codes1, candidates, workspace, weightedEditDistances);
+   }
+
+   /**
+    * Set the features for a query and the i'th name in a candidate set
+    * @param name1 query
+    * @param candidates candidate set
+    * @param i index of the name to test
+    * @param weightedEditDistance weighted edit distance from setWeightedEditDistances
+    * @param codeMatches CandidateSet.*_MATCH bits for the codes the name shares with the query
+    * @param features Features struct to set
+    * @param workspace buffers for this thread
+    */
+   void setFeatures(String name1, CandidateSet candidates, int i, double weightedEditDistance, int codeMatches,
+                    Features features, ScoringWorkspace workspace) {
+      features.weightedEditDistance = weightedEditDistance;
+      if (isSurname) {
+         features.nysiis = codeMatch(codeMatches, CandidateSet.NYSIIS_MATCH);
+      }
+      features.soundex = codeMatch(codeMatches, CandidateSet.SOUNDEX_MATCH);
+      features.refinedSoundex = codeMatch(codeMatches, CandidateSet.REFINED_SOUNDEX_MATCH);
+      features.dmSoundex = codeMatch(codeMatches, CandidateSet.DM_SOUNDEX_MATCH);
+      try {
+         features.levenstein = workspace.levenstein(name1, candidates.getName(i));
+      }
+      catch (IllegalArgumentException e) {
+         logger.severe("Illegal argument for pair: "+name1+","+candidates.getName(i)+" "+e);
+      }
+   }
+
+   private double codeMatch(int codeMatches, int bit) {
+      return (codeMatches & bit) != 0 ? 1.0 : 0.0;
+   }
+
+   private void setCodeFeatures(Codes codes1, Codes codes2, Features features) {
+      if (isSurname) {
+         features.nysiis = codeScorer(codes1.packedNysCode, codes1.nysCode, codes2.packedNysCode, codes2.nysCode);
+      }
+      features.soundex = codeScorer(codes1.packedSdxCode, codes1.sdxCode, codes2.packedSdxCode, codes2.sdxCode);
+      features.refinedSoundex = codeScorer(codes1.packedRefSdxCode, codes1.refSdxCode, codes2.packedRefSdxCode, codes2.refSdxCode);
+      features.dmSoundex = codeScorer(codes1.packedDmSdxCode, codes1.dmSdxCode, codes2.packedDmSdxCode, codes2.dmSdxCode);
+   }
+
+   /**
+    * Set the features for a name pair, but stop as soon as the pair is sure to score below the threshold.
+    * The cheap code features are set first, then levenstein, and the weighted edit distance last,
+    * giving up on it as soon as the distance is too large to reach the threshold.
+    * When the pair is accepted, the features are the same as those set by setFeatures.
+    * @param name1 head-name to test
+    * @param codes1 codes for head-name to test
+    * @param name2 name to test
+    * @param codes2 codes for name to test
+    * @param features Features struct to set
+    * @param featuresScorer scorer whose score is compared to the threshold
+    * @param threshold minimum score
+    * @param workspace buffers for this thread
+    * @return false if the pair scores below the threshold, in which case the features are incomplete
+    */
+   boolean setFeaturesIfScoreAtLeast(String name1, Codes codes1, String name2, Codes codes2, Features features,
+                                     FeaturesScorer featuresScorer, double threshold, ScoringWorkspace workspace) {
+      // a name without tokens has a weighted edit distance of -infinity, so the bounds below don't hold
+      if (codes1.wedTokens.length == 0 || codes2.wedTokens.length == 0) {
+         setFeatures(name1, codes1, name2, codes2, features, workspace);
+         return true;
+      }
+      try {
+         // the weighted edit distance isn't negative and its weight is, so assume it's 0 to bound the score;
+         // the edit distance is at least the difference in lengths
+         features.weightedEditDistance = 0.0;
+         setCodeFeatures(codes1, codes2, features);
+         features.levenstein = -Math.abs(name1.length() - name2.length());
+         if (featuresScorer.score(features) < threshold) {
+            return false;
          }
-         if (isSurname) {
-            features.nysiis = codeScorer(codes1.nysCode, codes2.nysCode);
+         features.levenstein = workspace.levenstein(name1, name2);
+         double maxScore = featuresScorer.score(features);
+         if (maxScore < threshold) {
+            return false;
          }
-         features.soundex = codeScorer(codes1.sdxCode, codes2.sdxCode);
-         features.refinedSoundex = codeScorer(codes1.refSdxCode, codes2.refSdxCode);
-         features.dmSoundex = codeScorer(codes1.dmSdxCode, codes2.dmSdxCode);
-         features.levenstein = levenstein.score(name1, name2);
+         double maxWed = (maxScore - threshold) / -featuresScorer.getWeightedEditDistanceWeight();
+         features.weightedEditDistance = wed.getScore(codes1, codes2, workspace.fst, maxWed);
+         return features.weightedEditDistance != Double.POSITIVE_INFINITY;
       }
       catch (IllegalArgumentException e) {
-         logger.severe("Illegal argument for pair: "+name1+","+name2+" "+e);
+         // score the pair the way setFeatures does, which logs the error
+         features.clear();
+         setFeatures(name1, codes1, name2, codes2, features, workspace);
+         return true;
       }
    }
 
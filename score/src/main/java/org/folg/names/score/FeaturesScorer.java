@@ -21,12 +21,22 @@ package org.folg.names.score;
  * The weights were generated by running training data provided by Ancestry.com through Weka's Logistic learner
  */
 public class FeaturesScorer {
+   private static final double SURNAME_WED_WEIGHT = -5.6122;
+   private static final double GIVENNAME_WED_WEIGHT = -7.3705;
+
    private final boolean isSurname;
 
    public FeaturesScorer(boolean isSurname) {
       this.isSurname = isSurname;
    }
 
+   /**
+    * @return weight of the weighted edit distance feature; it's negative, so a larger distance lowers the score
+    */
+   public double getWeightedEditDistanceWeight() {
+      return isSurname ? SURNAME_WED_WEIGHT : GIVENNAME_WED_WEIGHT;
+   }
+
    public double score(Features features) {
       if (isSurname) {
 // Logistic (F=86.2)
@@ -38,7 +48,7 @@ public class FeaturesScorer {
 //lev           0.3696
 //Intercept     7.7697
       return 7.7697 +
-              features.weightedEditDistance * -5.6122 +
+              features.weightedEditDistance * SURNAME_WED_WEIGHT +
               features.nysiis * 0.4026 +
               features.soundex * 0.1687 +
               features.refinedSoundex * 0.5052 +
@@ -54,7 +64,7 @@ public class FeaturesScorer {
 //lev           0.4359
 //Intercept    11.5572
          return 11.5572 +
-                 features.weightedEditDistance * -7.3705 +
+                 features.weightedEditDistance * GIVENNAME_WED_WEIGHT +
                  // nysiis not useful for givennames
                  features.soundex * 0.0699 +
                  features.refinedSoundex * 0.6476 +
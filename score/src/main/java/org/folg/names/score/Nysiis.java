@@ -19,6 +19,10 @@ package org.folg.names.score;
 /**
  * Nysiis encoding algorithm
  * Translated from http://www.dropby.com/nysiisOriginal.js
+ *
+ * Each step of the original regular-expression implementation (RegexNysiis) is a single pass over a char array,
+ * so a name is encoded with one array and one result string.  The passes reproduce the regular expressions exactly,
+ * including the matching order and the quirks of the original.
  */
 public class Nysiis implements org.apache.commons.codec.StringEncoder {
 
@@ -26,15 +30,86 @@ public class Nysiis implements org.apache.commons.codec.StringEncoder {
       return encode((String)o);
    }
 
+   private static boolean isVowel(char c) {
+      return c == 'A' || c == 'E' || c == 'I' || c == 'O' || c == 'U';
+   }
+
+   // what \s matches
+   private static boolean isSpace(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+   }
+
+   // what $ matches in front of at the end of the input
+   private static boolean isLineTerminator(char c) {
+      return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+   }
+
+   private static char[] toUpperCase(String name) {
+      char[] buf = new char[name.length()];
+      for (int i = 0; i < buf.length; i++) {
+         char c = name.charAt(i);
+         if (c >= 0x80) {
+            // String.toUpperCase can change the length of non-ascii names
+            return name.toUpperCase().toCharArray();
+         }
+         buf[i] = (c >= 'a' && c <= 'z' ? (char)(c - 'a' + 'A') : c);
+      }
+      return buf;
+   }
+
+   // true if buf[from..to) is JR, SR, or a run of I's and V's
+   private static boolean isSuffix(char[] buf, int from, int to) {
+      if (to - from == 2 && (buf[from] == 'J' || buf[from] == 'S') && buf[from+1] == 'R') {
+         return true;
+      }
+      if (from == to) {
+         return false;
+      }
+      for (int i = from; i < to; i++) {
+         if (buf[i] != 'I' && buf[i] != 'V') {
+            return false;
+         }
+      }
+      return true;
+   }
+
    public String encode(String name) {
-      name = name.toUpperCase().trim();
+      char[] buf = toUpperCase(name);
+
+      // trim
+      int start = 0;
+      int end = buf.length;
+      while (start < end && buf[start] <= ' ') {
+         start++;
+      }
+      while (end > start && buf[end-1] <= ' ') {
+         end--;
+      }
 
       // remove "JR", "SR", or Roman Numerals from the end of the name
       // (where "Roman Numerals" can be a malformed run of 'I' and 'V' chars)
-      name = name.replaceFirst("\\s+([JS]R|[VI]+)$", "");
+      // the suffix follows the last run of spaces; $ also matches in front of a final line terminator
+      int suffixEnd = (end > start && isLineTerminator(buf[end-1]) ? end-1 : end);
+      int space = suffixEnd - 1;
+      while (space >= start && !isSpace(buf[space])) {
+         space--;
+      }
+      if (space >= start && isSuffix(buf, space+1, suffixEnd)) {
+         while (space > start && isSpace(buf[space-1])) {
+            space--;
+         }
+         // a final line terminator would be removed with the other non-alpha characters anyway
+         end = space;
+      }
 
-	   // remove all non-alpha characters
-	   name = name.replaceAll("[^A-Z]+", "");
+      // remove all non-alpha characters
+      int n = 0;
+      for (int i = start; i < end; i++) {
+         char c = buf[i];
+         if (c >= 'A' && c <= 'Z') {
+            buf[n++] = c;
+         }
+      }
 
       // BEGIN ALGORITHM *******************************************
 
@@ -44,99 +119,177 @@ public class Nysiis implements org.apache.commons.codec.StringEncoder {
       //	     K -> C
       //	PH, PF -> FF
       //	   SCH -> SSS
-      if (name.startsWith("MAC"))
-         name = name.replaceFirst("^MAC", "MCC");
-      else if (name.startsWith("KN"))
-         name = name.replaceFirst("^KN", "NN");
-      else if(name.startsWith("K"))
-         name = name.replaceFirst("^K", "C");
-      else if(name.startsWith("PH"))
-         name = name.replaceFirst("^PH", "FF");
-      else if(name.startsWith("PF"))
-         name = name.replaceFirst("^PF", "FF");
-      else if(name.startsWith("SCH"))
-         name = name.replaceFirst("^SCH", "SSS");
+      if (n >= 3 && buf[0] == 'M' && buf[1] == 'A' && buf[2] == 'C') {
+         buf[1] = 'C';
+      }
+      else if (n >= 2 && buf[0] == 'K' && buf[1] == 'N') {
+         buf[0] = 'N';
+      }
+      else if (n >= 1 && buf[0] == 'K') {
+         buf[0] = 'C';
+      }
+      else if (n >= 2 && buf[0] == 'P' && (buf[1] == 'H' || buf[1] == 'F')) {
+         buf[0] = 'F';
+         buf[1] = 'F';
+      }
+      else if (n >= 3 && buf[0] == 'S' && buf[1] == 'C' && buf[2] == 'H') {
+         buf[1] = 'S';
+         buf[2] = 'S';
+      }
 
       // Transcode two-character suffix as follows,
       //	            EE, IE -> Y
       //	DT, RT, RD, NT, ND -> D
-      if(name.endsWith("EE"))
-         name = name.replaceFirst("EE$", "Y");
-      else if(name.endsWith("IE"))
-         name = name.replaceFirst("IE$", "Y");
-      else if(name.matches("DT$|RT$|RD$|NT$|ND$"))
-         name = name.replaceFirst("DT$|RT$|RD$|NT$|ND$", "D");
+      // (the original tests DT, RT, RD, NT, and ND against the whole name, so they apply only to two-letter names)
+      if (n >= 2 && buf[n-1] == 'E' && (buf[n-2] == 'E' || buf[n-2] == 'I')) {
+         buf[n-2] = 'Y';
+         n--;
+      }
+      else if (n == 2 && ((buf[1] == 'T' && (buf[0] == 'D' || buf[0] == 'R' || buf[0] == 'N')) ||
+                          (buf[1] == 'D' && (buf[0] == 'R' || buf[0] == 'N')))) {
+         buf[0] = 'D';
+         n = 1;
+      }
 
       // Save first char for later, to be used as first char of key
-      String firstChar = name.substring(0,1);
-      name = name.substring(1);
+      if (n == 0) {
+         throw new StringIndexOutOfBoundsException("Name has no letters: "+name);
+      }
+      // the remaining characters are buf[1..n)
 
       // Translate remaining characters by following these rules, incrementing by one character each time:
       //	EV	->	AF 	else A,E,I,O,U	->	A
-      name = name.replace("EV", "AF");
-      name = name.replaceAll("[AEIOU]+", "A");
+      for (int i = 1; i < n-1; i++) {
+         if (buf[i] == 'E' && buf[i+1] == 'V') {
+            buf[i++] = 'A';
+            buf[i] = 'F';
+         }
+      }
+      int w = 1;
+      boolean inVowels = false;
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         if (isVowel(c)) {
+            if (inVowels) {
+               continue;
+            }
+            inVowels = true;
+            c = 'A';
+         }
+         else {
+            inVowels = false;
+         }
+         buf[w++] = c;
+      }
+      n = w;
       //	Q	->	G
-      name = name.replace("Q", "G");
       //	Z	->	S
-      name = name.replace("Z", "S");
       //	M	->	N
-      name = name.replace("M", "N");
       //	KN	->	N, else K	->	C
-      name = name.replace("KN", "N");
-      name = name.replace("K", "C");
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         if (c == 'Q') {
+            buf[r] = 'G';
+         }
+         else if (c == 'Z') {
+            buf[r] = 'S';
+         }
+         else if (c == 'M') {
+            buf[r] = 'N';
+         }
+      }
+      w = 1;
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         if (c == 'K') {
+            if (r+1 < n && buf[r+1] == 'N') {
+               r++;
+               c = 'N';
+            }
+            else {
+               c = 'C';
+            }
+         }
+         buf[w++] = c;
+      }
+      n = w;
       //	SCH	->	SSS
-      name = name.replace("SCH", "SSS");
       //	PH	->	FF
-      name = name.replace("PH", "FF");
+      for (int i = 1; i < n-1; i++) {
+         if (buf[i] == 'S' && buf[i+1] == 'C' && i+2 < n && buf[i+2] == 'H') {
+            buf[++i] = 'S';
+            buf[++i] = 'S';
+         }
+         else if (buf[i] == 'P' && buf[i+1] == 'H') {
+            buf[i++] = 'F';
+            buf[i] = 'F';
+         }
+      }
       //	H	->	If previous or next is nonvowel, previous
-      name = name.replaceAll("([^AEIOU])H", "$1");
+      w = 1;
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         buf[w++] = c;
+         if (!isVowel(c) && r+1 < n && buf[r+1] == 'H') {
+            r++;
+         }
+      }
+      n = w;
       // DWQ: added $2 so output matches definition of Nysiis at http://www.dropby.com/NYSIIS.html
-      name = name.replaceAll("(.)H([^AEIOU])", "$1$2");
+      w = 1;
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         buf[w++] = c;
+         if (r+2 < n && buf[r+1] == 'H' && !isVowel(buf[r+2])) {
+            buf[w++] = buf[r+2];
+            r += 2;
+         }
+      }
+      n = w;
       //	W 	->	If previous is vowel, previous
-      name = name.replaceAll("[AEIOU]W", "A");
+      w = 1;
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         if (isVowel(c) && r+1 < n && buf[r+1] == 'W') {
+            c = 'A';
+            r++;
+         }
+         buf[w++] = c;
+      }
+      n = w;
 
       // If last character is S, remove it
-      name = name.replaceFirst("S$", "");
+      if (n > 1 && buf[n-1] == 'S') {
+         n--;
+      }
 
       // If last characters are AY, replace with Y
-      name = name.replaceFirst("AY$", "Y");
+      if (n > 2 && buf[n-2] == 'A' && buf[n-1] == 'Y') {
+         buf[n-2] = 'Y';
+         n--;
+      }
 
       // If last character is A, remove it
-      name = name.replaceFirst("A$", "");
+      if (n > 1 && buf[n-1] == 'A') {
+         n--;
+      }
 
       // Collapse all strings of repeated characters
-      // This is more brute force that it needs to be
-      name = name.replaceAll("[AEIOU]+", "A");
-      name = name.replaceAll("B+", "B");
-      name = name.replaceAll("C+", "C");
-      name = name.replaceAll("D+", "D");
-      name = name.replaceAll("F+", "F");
-      name = name.replaceAll("G+", "G");
-      name = name.replaceAll("H+", "H");
-      name = name.replaceAll("J+", "J");
-      name = name.replaceAll("K+", "K");
-      name = name.replaceAll("L+", "L");
-      name = name.replaceAll("M+", "M");
-      name = name.replaceAll("N+", "N");
-      name = name.replaceAll("P+", "P");
-      name = name.replaceAll("Q+", "Q");
-      name = name.replaceAll("R+", "R");
-      name = name.replaceAll("S+", "S");
-      name = name.replaceAll("T+", "T");
-      name = name.replaceAll("V+", "V");
-      name = name.replaceAll("W+", "W");
-      name = name.replaceAll("X+", "X");
-      name = name.replaceAll("Y+", "Y");
-      name = name.replaceAll("Z+", "Z");
+      // (collapsing the runs of one letter never creates a run of another, so a single pass does it)
+      w = 1;
+      for (int r = 1; r < n; r++) {
+         char c = buf[r];
+         if (isVowel(c)) {
+            c = 'A';
+         }
+         if (w == 1 || buf[w-1] != c) {
+            buf[w++] = c;
+         }
+      }
+      n = w;
 
       // Use original first char of name as first char of key
-      name = firstChar + name;
-
       // the NYSIIS code is only 6 chars long
-      if (name.length() > 6) {
-         name = name.substring(0, 6);
-      }
-
-      return name;
+      return new String(buf, 0, Math.min(n, 6));
    }
 }
@@ -16,13 +16,21 @@
 
 package org.folg.names.score;
 
+import org.folg.names.search.NamePairScorer;
+
 import java.util.logging.Logger;
 
 /**
  * Compute the similarity score between two names
  */
-public class Scorer {
+public class Scorer implements NamePairScorer {
+   /**
+    * Returned by scoreNamePairAtLeast when the pair scores below the threshold
+    */
+   public static final double BELOW_THRESHOLD = Double.NEGATIVE_INFINITY;
+
    private static Logger logger = Logger.getLogger("org.folg.names.score");
+   private static final int CODES_CACHE_SIZE = 100000;
    private static final Scorer surnameScorer = new Scorer(true);
    private static final Scorer givennameScorer = new Scorer(false);
    public static Scorer getGivennameInstance() {
@@ -34,12 +42,99 @@ public class Scorer {
 
    private final FeaturesGenerator featuresGenerator;
    private final FeaturesScorer featuresScorer;
+   private final CodesCache codesCache = new CodesCache(CODES_CACHE_SIZE);
+   // each thread reuses its own buffers, so scoring a pair of cached names doesn't allocate
+   private final ThreadLocal<ScoringWorkspace> workspaces = new ThreadLocal<ScoringWorkspace>() {
+      @Override
+      protected ScoringWorkspace initialValue() {
+         return new ScoringWorkspace();
+      }
+   };
 
    private Scorer(final boolean isSurname) {
       this.featuresGenerator = new FeaturesGenerator(isSurname);
       this.featuresScorer = new FeaturesScorer(isSurname);
    }
 
+   /**
+    * Look up the codes for known names in a prebuilt (e.g., memory-mapped) dictionary instead of computing them
+    * @param codesDictionary dictionary built by CodesDictionaryBuilder for the same name type, or null to always compute codes
+    */
+   public void setCodesDictionary(CodesDictionary codesDictionary) {
+      featuresGenerator.setCodesDictionary(codesDictionary);
+   }
+
+   /**
+    * Score the weighted edit distance by the exact minimum path cost instead of the Viterbi path cost it was trained on;
+    * see WeightedEditDistance.setExactMinimum.  The scores differ for a small fraction of pairs,
+    * so call this before scoring, and don't mix the scores with ones in the similar-name tables.
+    * @param exactMinimum true to use the exact minimum
+    */
+   public void setExactWeightedEditDistance(boolean exactMinimum) {
+      featuresGenerator.setExactWeightedEditDistance(exactMinimum);
+   }
+
+   /**
+    * Return the codes for a name piece, from the cache if possible
+    * Pass them to scoreNamePair to score the same name against many others; don't modify them
+    * @param namePiece normalized name piece
+    * @return codes
+    */
+   public Codes getCodes(String namePiece) {
+      Codes codes = codesCache.get(namePiece);
+      if (codes == null) {
+         codes = featuresGenerator.getCodes(namePiece);
+         codesCache.put(namePiece, codes);
+      }
+      return codes;
+   }
+
+   /**
+    * Return the codes cache, to read its hit and miss counts
+    * @return codes cache
+    */
+   public CodesCache getCodesCache() {
+      return codesCache;
+   }
+
+   /**
+    * Create a set of names to score queries against with scoreAgainst
+    * @param namePieces normalized name pieces
+    * @return candidate set
+    */
+   public CandidateSet newCandidateSet(String[] namePieces) {
+      return new CandidateSet(this, featuresGenerator, namePieces);
+   }
+
+   /**
+    * Score a name piece against every name in a candidate set
+    * The query's codes are matched against all of the candidates' codes at once, the weighted edit distance reuses
+    * the work for the tokens each candidate shares with the previous one, and the same buffers are reused
+    * for every candidate.  The scores are the same as those returned by scoreNamePair.
+    *
+    * @param namePiece normalized name piece
+    * @param candidates candidate set created by this scorer
+    * @return scores, in the same order as the names in the candidate set
+    */
+   public double[] scoreAgainst(String namePiece, CandidateSet candidates) {
+      if (candidates.getScorer() != this) {
+         throw new IllegalArgumentException("Candidate set was created by a different scorer");
+      }
+      Codes codes = getCodes(namePiece);
+      ScoringWorkspace workspace = workspaces.get();
+      int[] codeMatches = candidates.matchCodes(codes, workspace);
+      Features features = workspace.features;
+      double[] scores = new double[candidates.size()];
+      // compute the weighted edit distances into scores, then replace each with the score
+      featuresGenerator.setWeightedEditDistances(codes, candidates, workspace, scores);
+      for (int i = 0; i < scores.length; i++) {
+         features.clear();
+         featuresGenerator.setFeatures(namePiece, candidates, i, scores[i], codeMatches[i], features, workspace);
+         scores[i] = featuresScorer.score(features);
+      }
+      return scores;
+   }
+
    /**
     * Score two name pieces to see how close they are.
     *
@@ -48,10 +143,59 @@ public class Scorer {
     * @return score, higher value indicates more-similar names
     */
    public double scoreNamePair(String namePiece1, String namePiece2) {
-      Codes codes1 = featuresGenerator.getCodes(namePiece1);
-      Codes codes2 = featuresGenerator.getCodes(namePiece2);
-      Features features = new Features();
-      featuresGenerator.setFeatures(namePiece1, codes1, namePiece2, codes2, features);
+      return scoreNamePair(namePiece1, getCodes(namePiece1), namePiece2, getCodes(namePiece2));
+   }
+
+   /**
+    * Score two name pieces using codes the caller already has
+    *
+    * @param namePiece1 normalized name piece
+    * @param codes1 codes for namePiece1, from getCodes
+    * @param namePiece2 another normalized name piece
+    * @param codes2 codes for namePiece2, from getCodes
+    * @return score, higher value indicates more-similar names
+    */
+   public double scoreNamePair(String namePiece1, Codes codes1, String namePiece2, Codes codes2) {
+      ScoringWorkspace workspace = workspaces.get();
+      Features features = workspace.features;
+      features.clear();
+      featuresGenerator.setFeatures(namePiece1, codes1, namePiece2, codes2, features, workspace);
       return featuresScorer.score(features);
    }
+
+   /**
+    * Score two name pieces, but only if they score at least threshold.
+    * Much faster than scoreNamePair when most pairs are rejected, because it stops as soon as
+    * the pair can't reach the threshold, usually before computing the weighted edit distance.
+    *
+    * @param namePiece1 normalized name piece
+    * @param namePiece2 another normalized name piece
+    * @param threshold minimum score
+    * @return the same score as scoreNamePair if it is at least threshold, otherwise BELOW_THRESHOLD
+    */
+   public double scoreNamePairAtLeast(String namePiece1, String namePiece2, double threshold) {
+      return scoreNamePairAtLeast(namePiece1, getCodes(namePiece1), namePiece2, getCodes(namePiece2), threshold);
+   }
+
+   /**
+    * Score two name pieces using codes the caller already has, but only if they score at least threshold
+    *
+    * @param namePiece1 normalized name piece
+    * @param codes1 codes for namePiece1, from getCodes
+    * @param namePiece2 another normalized name piece
+    * @param codes2 codes for namePiece2, from getCodes
+    * @param threshold minimum score
+    * @return the same score as scoreNamePair if it is at least threshold, otherwise BELOW_THRESHOLD
+    */
+   public double scoreNamePairAtLeast(String namePiece1, Codes codes1, String namePiece2, Codes codes2, double threshold) {
+      ScoringWorkspace workspace = workspaces.get();
+      Features features = workspace.features;
+      features.clear();
+      if (!featuresGenerator.setFeaturesIfScoreAtLeast(namePiece1, codes1, namePiece2, codes2, features,
+                                                       featuresScorer, threshold, workspace)) {
+         return BELOW_THRESHOLD;
+      }
+      double score = featuresScorer.score(features);
+      return score >= threshold ? score : BELOW_THRESHOLD;
+   }
 }
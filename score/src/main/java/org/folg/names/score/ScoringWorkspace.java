@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+/**
+ * Buffers reused from one name pair to the next so scoring a pair doesn't allocate
+ * Not thread-safe; Scorer keeps one per thread
+ */
+class ScoringWorkspace {
+   final FST fst = new FST();
+   final Features features = new Features();
+   private final BitParallelLevenstein levenstein = new BitParallelLevenstein();
+   // token buffers for CandidateSet, indexed by length, since FST uses the whole array
+   private int[][] tokenBuffers = new int[0][];
+   private int[] codeMatches = new int[0];
+
+   int[] getTokenBuffer(int length) {
+      if (tokenBuffers.length <= length) {
+         int[][] buffers = new int[length+1][];
+         System.arraycopy(tokenBuffers, 0, buffers, 0, tokenBuffers.length);
+         tokenBuffers = buffers;
+      }
+      if (tokenBuffers[length] == null) {
+         tokenBuffers[length] = new int[length];
+      }
+      return tokenBuffers[length];
+   }
+
+   int[] getCodeMatchesBuffer(int size) {
+      if (codeMatches.length < size) {
+         codeMatches = new int[size];
+      }
+      return codeMatches;
+   }
+
+   /**
+    * Same as SecondString's Levenstein score: the negative of the number of insertions, deletions, and substitutions
+    * needed to turn one string into the other
+    */
+   double levenstein(String s, String t) {
+      return levenstein.score(s, t);
+   }
+}
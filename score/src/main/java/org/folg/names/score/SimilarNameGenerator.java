@@ -20,6 +20,7 @@ import org.folg.names.score.Codes;
 import org.folg.names.score.Features;
 import org.folg.names.score.FeaturesGenerator;
 import org.folg.names.score.FeaturesScorer;
+import org.folg.names.search.VariantGenerator;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -28,8 +29,9 @@ import java.util.List;
 
 /**
  * Generate a list of similar names from the common names
+ * Implements VariantGenerator so Searcher can generate similar names for rare names on demand
  */
-public class SimilarNameGenerator {
+public class SimilarNameGenerator implements VariantGenerator {
    public static final double GIVENNAME_DEFAULT_CLASSIFIER_THRESHOLD = 2.3;
    public static final double GIVENNAME_DEFAULT_CLUSTER_THRESHOLD = -0.75;
    public static final double SURNAME_DEFAULT_CLASSIFIER_THRESHOLD = 0.7;
@@ -139,10 +141,12 @@ public class SimilarNameGenerator {
       }
    }
 
-   private void testName(String name, Codes codes, String testName, Features features, List<NameScore> similarNames, double classifierThreshold) {
-      if (!name.equals(testName)) {
-         Codes testCodes = featuresGenerator.getCodes(testName);
-         featuresGenerator.setFeatures(name, codes, testName, testCodes, features);
+   private void testName(String name, Codes codes, String testName, Codes testCodes, ScoringWorkspace workspace,
+                         List<NameScore> similarNames, double classifierThreshold) {
+      // most names are rejected, so stop scoring as soon as they can't reach the threshold
+      Features features = workspace.features;
+      if (featuresGenerator.setFeaturesIfScoreAtLeast(name, codes, testName, testCodes, features,
+                                                      featuresScorer, classifierThreshold, workspace)) {
          double score = featuresScorer.score(features);
          if (score >= classifierThreshold) {
             similarNames.add(new NameScore(testName,score));
@@ -150,10 +154,16 @@ public class SimilarNameGenerator {
       }
    }
 
-   private void testCluster(String name, Codes codes, Cluster cluster, Features features, List<NameScore> similarNames, double classifierThreshold) {
-      testName(name, codes, cluster.name, features, similarNames, classifierThreshold);
+   private void testName(String name, Codes codes, String testName, ScoringWorkspace workspace, List<NameScore> similarNames, double classifierThreshold) {
+      if (!name.equals(testName)) {
+         testName(name, codes, testName, featuresGenerator.getCodes(testName), workspace, similarNames, classifierThreshold);
+      }
+   }
+
+   private void testCluster(String name, Codes codes, Cluster cluster, ScoringWorkspace workspace, List<NameScore> similarNames, double classifierThreshold) {
+      testName(name, codes, cluster.name, workspace, similarNames, classifierThreshold);
       for (String memberName : cluster.memberNames) {
-         testName(name, codes, memberName, features, similarNames, classifierThreshold);
+         testName(name, codes, memberName, workspace, similarNames, classifierThreshold);
       }
    }
 
@@ -189,6 +199,8 @@ public class SimilarNameGenerator {
     */
    public String[] generateSimilarNames(String name, double classifierThreshold, double clusterThreshold, int maxNames) {
       List<NameScore> similarNames = new ArrayList<NameScore>();
+      // each call has its own buffers, since similar names may be generated on several threads at once
+      ScoringWorkspace workspace = new ScoringWorkspace();
       Features features = new Features();
       Codes codes = featuresGenerator.getCodes(name);
 
@@ -208,12 +220,12 @@ public class SimilarNameGenerator {
             }
             // test all clusters closer than min cluster threshold
             if (score >= clusterThreshold) {
-               testCluster(name, codes, cluster, features, similarNames, classifierThreshold);
+               testCluster(name, codes, cluster, workspace, similarNames, classifierThreshold);
             }
          }
          // if no clusters have been tested yet, test the closest one
          if (closestClusterScore < clusterThreshold && closestCluster != null) {
-            testCluster(name, codes, closestCluster, features, similarNames, classifierThreshold);
+            testCluster(name, codes, closestCluster, workspace, similarNames, classifierThreshold);
          }
       }
       else {
@@ -221,12 +233,7 @@ public class SimilarNameGenerator {
          for (int i = 0; i < commonNames.length; i++) {
             String commonName = commonNames[i];
             if (!name.equals(commonName)) {
-               Codes commonCodes = commonNameCodes[i];
-               featuresGenerator.setFeatures(name, codes, commonName, commonCodes, features);
-               double score = featuresScorer.score(features);
-               if (score >= classifierThreshold) {
-                  similarNames.add(new NameScore(commonName, score));
-               }
+               testName(name, codes, commonName, commonNameCodes[i], workspace, similarNames, classifierThreshold);
             }
          }
       }
@@ -17,42 +17,181 @@
 package org.folg.names.score;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Logger;
 
 /**
  * Computes an "edit distance" where the actual edit costs are weighted according to a model
  * The model was generated by running training data provided by Ancestry.com through an EM algorithm
  */
 public class WeightedEditDistance {
+   private static Logger logger = Logger.getLogger("org.folg.names.score");
+
    // differences near the beginning cost more than differences near the end
    // differences near the end of surnames cost more than differences near the end of given names
    private static final double SURNAME_SMOOTH = 5;
    private static final double GIVENNAME_SMOOTH = 2.5;
 
    private final WeightedEdits we;
+   private final CompiledWeightedEdits edits;
    private final WeightedEditDistanceTokenizer wedt;
    private final double smooth;
+   private volatile boolean exactMinimum = false;
 
    public WeightedEditDistance(boolean isSurname) {
-      we = new WeightedEdits();
-      String filename = (isSurname ? "surname" : "givenname")+"WeightedEdits.model";
+      String prefix = (isSurname ? "surname" : "givenname")+"WeightedEdits";
       try {
-         we.load(getClass().getClassLoader().getResourceAsStream(filename));
+         we = loadWeightedEdits(getClass().getClassLoader(), prefix);
       }
       catch (IOException e) {
-         throw new RuntimeException("Can't find "+filename);
+         throw new RuntimeException("Can't read "+prefix, e);
       }
       wedt = new WeightedEditDistanceTokenizer();
       smooth = isSurname ? SURNAME_SMOOTH : GIVENNAME_SMOOTH;
+      edits = we.compile(smooth);
+   }
+
+   /**
+    * Load the weighted edits from the text model, prefix.model, or from the binary model converted from it,
+    * prefix.bin, which loads faster (see WeightedEditsConverter).  The text model is the source of truth:
+    * a binary model converted from a different text model is ignored, so editing the text model without
+    * converting it again can't leave stale costs in use.
+    * @param classLoader class loader to read the models from
+    * @param prefix surnameWeightedEdits or givennameWeightedEdits
+    * @return weighted edits
+    * @throws IOException if neither model can be read
+    */
+   static WeightedEdits loadWeightedEdits(ClassLoader classLoader, String prefix) throws IOException {
+      String textFilename = prefix+".model";
+      String binaryFilename = prefix+".bin";
+      WeightedEdits we = new WeightedEdits();
+      InputStream binaryStream = classLoader.getResourceAsStream(binaryFilename);
+      if (binaryStream != null) {
+         long binaryChecksum = we.loadBinary(binaryStream);
+         InputStream textStream = classLoader.getResourceAsStream(textFilename);
+         if (textStream == null || WeightedEdits.getChecksum(textStream) == binaryChecksum) {
+            return we;
+         }
+         logger.warning(binaryFilename+" wasn't converted from "+textFilename+"; loading "+textFilename+" instead");
+         we = new WeightedEdits();
+      }
+      InputStream textStream = classLoader.getResourceAsStream(textFilename);
+      if (textStream == null) {
+         throw new IOException("Can't find "+textFilename);
+      }
+      we.load(textStream);
+      return we;
+   }
+
+   /**
+    * Score pairs by the exact lowest positionally-weighted cost of the paths with the lowest total edit cost
+    * (FST.getMinPathScore) instead of the cost of the path Viterbi finds in either direction (FST.getPathScore).
+    * The exact minimum is lower for about 1.5% of surname pairs and 1.1% of given-name pairs, so it doesn't match
+    * the FeaturesScorer weights or the similar-name tables, which were built from the Viterbi scores, and it's slower.
+    * @param exactMinimum true to score pairs by the exact minimum
+    */
+   public void setExactMinimum(boolean exactMinimum) {
+      this.exactMinimum = exactMinimum;
+   }
+
+   /**
+    * Return the positionally-weighted cost of turning the tokens into themselves; Codes caches it for each name
+    * @param tokens tokens
+    * @return minimum cost
+    */
+   public double getMinCost(int[] tokens) {
+      return edits.getMinCost(tokens);
    }
 
    public double getScore(int[] sourceTokens, int[] targetTokens) {
+      return getScore(sourceTokens, targetTokens, new FST());
+   }
+
+   /**
+    * Compute the score using an FST that is reused from one pair to the next
+    * @param sourceTokens source tokens
+    * @param targetTokens target tokens
+    * @param fst FST to reuse
+    * @return score
+    */
+   public double getScore(int[] sourceTokens, int[] targetTokens, FST fst) {
+      return getScore(sourceTokens, targetTokens, fst, Double.POSITIVE_INFINITY);
+   }
+
+   /**
+    * Compute the score, giving up as soon as it is sure to be greater than maxScore
+    * @param sourceTokens source tokens
+    * @param targetTokens target tokens
+    * @param fst FST to reuse
+    * @param maxScore highest score of interest
+    * @return score, or Double.POSITIVE_INFINITY if the score is greater than maxScore
+    */
+   public double getScore(int[] sourceTokens, int[] targetTokens, FST fst, double maxScore) {
+      if (sourceTokens.length == 0 || targetTokens.length == 0) {
+         return Double.NEGATIVE_INFINITY;
+      }
+      return getScore(sourceTokens, edits.getMinCost(sourceTokens), targetTokens, edits.getMinCost(targetTokens), fst, maxScore);
+   }
+
+   /**
+    * Compute the score using the minimum costs cached in the codes
+    * @param codes1 source codes
+    * @param codes2 target codes
+    * @param fst FST to reuse
+    * @param maxScore highest score of interest
+    * @return score, or Double.POSITIVE_INFINITY if the score is greater than maxScore
+    */
+   double getScore(Codes codes1, Codes codes2, FST fst, double maxScore) {
+      return getScore(codes1.wedTokens, codes1.wedMinCost, codes2.wedTokens, codes2.wedMinCost, fst, maxScore);
+   }
+
+   private double getScore(int[] sourceTokens, double sourceMinCost, int[] targetTokens, double targetMinCost,
+                           FST fst, double maxScore) {
       if (sourceTokens.length == 0 || targetTokens.length == 0) {
          return Double.NEGATIVE_INFINITY;
       }
-      // order of source, target may make a difference.  See comment in FST.java.
-      FST fst = new FST(sourceTokens, targetTokens);
-      fst.computeBestPath(we);
-      return fst.getBestPathScore(we, smooth);
+      // order of source, target may make a difference, so getPathScore takes the minimum of both.  See comment in FST.java.
+      fst.initScore(sourceTokens, targetTokens);
+      if (exactMinimum) {
+         return fst.getMinPathScore(edits, sourceMinCost, targetMinCost, maxScore);
+      }
+      return fst.getPathScore(edits, sourceMinCost, targetMinCost, maxScore);
+   }
+
+   /**
+    * Score tokens against the tokens of every name in a candidate set; the scores are the same as getScore's.
+    * The names are scored in order of their tokens, so the FST reuses the rows for the tokens
+    * each name shares with the one before it.
+    * @param codes codes of the name to score
+    * @param candidates candidate set
+    * @param workspace buffers for this thread
+    * @param scores set to the score for each name in the candidate set
+    */
+   void getScores(Codes codes, CandidateSet candidates, ScoringWorkspace workspace, double[] scores) {
+      int[] tokens = codes.wedTokens;
+      boolean exact = exactMinimum;
+      FST fst = workspace.fst;
+      fst.initTarget(tokens, candidates.getMaxTokens());
+      // 0 means start over, which we have to do after skipping a name
+      int sharedTokens = 0;
+      for (int k = 0; k < candidates.size(); k++) {
+         int i = candidates.getTokenOrder(k);
+         int[] candidateTokens = candidates.getTokens(i, workspace);
+         sharedTokens = Math.min(sharedTokens, candidates.getSharedTokens(k));
+         if (tokens.length == 0 || candidateTokens.length == 0) {
+            scores[i] = Double.NEGATIVE_INFINITY;
+            sharedTokens = 0;
+         }
+         else {
+            if (exact) {
+               scores[i] = fst.getMinPathScore(candidateTokens, sharedTokens, edits, candidates.getWedMinCost(i), codes.wedMinCost);
+            }
+            else {
+               scores[i] = fst.getPathScore(candidateTokens, sharedTokens, edits, candidates.getWedMinCost(i), codes.wedMinCost);
+            }
+            sharedTokens = candidateTokens.length;
+         }
+      }
    }
 
    public int[] tokenize(String s) {
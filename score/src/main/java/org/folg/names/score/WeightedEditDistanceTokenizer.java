@@ -16,9 +16,8 @@
 
 package org.folg.names.score;
 
-import com.sun.speech.freetts.lexicon.LetterToSound;
-import com.sun.speech.freetts.lexicon.LetterToSoundImpl;
-
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -79,7 +78,36 @@ public class WeightedEditDistanceTokenizer {
 //   private static final Pattern DOUBLE_CONSONANT_PATTERN = Pattern.compile("(b|c|d|f|g|h|j|k|l|m|n|p|q|r|s|t|v|w|x|y|z)\\1");
 //   private static final Pattern Y_CONSONANT_PATTERN = Pattern.compile("^y([^aeiou])");
 
-   private final LetterToSound lts;
+   private static final int R_TOKEN = PHONEME_MAP.get("r");
+   private static final int AX_TOKEN = PHONEME_MAP.get("ax");
+
+   private static CompiledLetterToSound staticLts = null;
+   private static synchronized CompiledLetterToSound getLetterToSound() {
+      // the compiled rules are immutable, so every tokenizer in the JVM shares one copy
+      if (staticLts == null) {
+         //read cmulex_lts.bin
+         InputStream in = WeightedEditDistanceTokenizer.class.getClassLoader().getResourceAsStream("cmulex_lts.bin");
+         if (in == null) {
+            throw new RuntimeException("cmulex_lts.bin not found");
+         }
+         try {
+            staticLts = CompiledLetterToSound.compile(in);
+         } catch (Exception e) {
+            throw new RuntimeException("Error reading cmulex_lts.bin", e);
+         }
+         finally {
+            try {
+               in.close();
+            }
+            catch (Exception e) {
+               // ignore
+            }
+         }
+      }
+      return staticLts;
+   }
+
+   private final CompiledLetterToSound lts;
 
    // get the token id for a string token
    public static int getTokenId(String token) {
@@ -89,69 +117,79 @@ public class WeightedEditDistanceTokenizer {
       return PHONEME_MAP.get(token);
    }
 
+   // get the token id for a phoneme, or -1 if it isn't one
+   static int getPhonemeId(String phoneme) {
+      Integer id = PHONEME_MAP.get(phoneme);
+      return (id == null ? -1 : id);
+   }
+
    public static String getToken(int tokenId) {
       if (tokenId == EMPTY_TOKEN) return "";
       return PHONEME_ARRAY[tokenId];
    }
 
    public WeightedEditDistanceTokenizer() {
-      try {
-         //read cmulex_lts.bin
-         lts = new LetterToSoundImpl(getClass().getClassLoader().getResource("cmulex_lts.bin"), true);
-      } catch (Exception e) {
-         throw new RuntimeException("cmulex_lts.bin not found", e);
-      }
+      lts = getLetterToSound();
    }
 
    public String[] getPhonemes(String s) {
+      int[] tokens = tokenize(s);
+      String[] phonemes = new String[tokens.length];
+      for (int i = 0; i < tokens.length; i++) {
+         phonemes[i] = PHONEME_ARRAY[tokens[i]];
+      }
+      return phonemes;
+   }
+
+   /**
+    * Tokenize a (cleaned) string into a sequence of tokens.
+    * @param word to tokenize
+    * @return token array
+    */
+   public int[] tokenize(String word) {
+      int length = word.length();
+      char[] letters = new char[length];
+      word.getChars(0, length, letters, 0);
+
       // LTS needs to have double-consonants turned into single consonants or it tends to miss them altogether
       // seems to be causing more trouble than it's worth - removed 8/23/10 dwq
       // m = DOUBLE_CONSONANT_PATTERN.matcher(s);
       // s = m.replaceAll("$1");
       // LTS doesn't handle spanish y very well, so let's help it: replace y followed by a consonant with i
-      if (s.length() > 2 && s.charAt(0) == 'y') {
-         char c = s.charAt(1);
+      if (length > 2 && letters[0] == 'y') {
+         char c = letters[1];
          if (c != 'a' && c != 'e' && c != 'i' && c != 'o' && c != 'u') {
-            s = "i"+s.substring(1);
+            letters[0] = 'i';
          }
       }
 
-      String[] phonemes = lts.getPhones(s, null);
+      // leave room in front for the aragon fix
+      int[] tokens = new int[Math.max(lts.getMaxPhonemes(length), 1) + 1];
+      int cnt = lts.getPhonemeIds(letters, length, tokens, 1);
       // certain 1-2 character strings like e and h don't get assigned phonemes for some reason
-      if (phonemes == null || phonemes.length == 0) {
-         phonemes = PHONEME_SUBST.get(s);
+      if (cnt == 0) {
+         String s = new String(letters);
+         String[] phonemes = PHONEME_SUBST.get(s);
          if (phonemes == null) {
-            phonemes = new String[0];
             logger.warning("0-length phoneme string="+s);
+            return new int[0];
+         }
+         if (phonemes.length + 1 > tokens.length) {
+            tokens = new int[phonemes.length + 1];
+         }
+         for (String phoneme : phonemes) {
+            tokens[1 + cnt++] = PHONEME_MAP.get(phoneme);
          }
       }
 
       // fix up names like aragon
-      if (s.length() > 0 &&
-              (s.charAt(0) == 'a' || s.charAt(0) == 'o') &&
-              phonemes.length > 0 &&
-              phonemes[0].equals("r")) {
-         String[] temp = new String[phonemes.length+1];
-         temp[0] = "ax";
-         System.arraycopy(phonemes, 0, temp, 1, phonemes.length);
-         phonemes = temp;
+      if (length > 0 &&
+              (letters[0] == 'a' || letters[0] == 'o') &&
+              tokens[1] == R_TOKEN) {
+         tokens[0] = AX_TOKEN;
+         return Arrays.copyOf(tokens, cnt + 1);
       }
 
-      return phonemes;
-   }
-
-   /**
-    * Tokenize a (cleaned) string into a sequence of tokens.
-    * @param word to tokenize
-    * @return token array
-    */
-   public int[] tokenize(String word) {
-      // Get phonemes
-      String[] phonemes = getPhonemes(word);
-      int[] tokens = new int[phonemes.length];
-      for (int i = 0; i < tokens.length; i++) {
-         tokens[i] = PHONEME_MAP.get(phonemes[i]);
-      }
-      return tokens;
+      return Arrays.copyOfRange(tokens, 1, cnt + 1);
    }
 }
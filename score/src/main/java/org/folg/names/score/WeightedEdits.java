@@ -17,6 +17,7 @@
 package org.folg.names.score;
 
 import java.io.*;
+import java.util.zip.CRC32;
 
 /**
  * Represents a set of possible edits and their associated costs.
@@ -24,8 +25,12 @@ import java.io.*;
 public class WeightedEdits {
    public static final int MAX_EDIT_COST = 100;
    private static final double COST_MULTIPLIER = 8;
+   private static final int MAGIC = 0x57454453;
+   private static final int VERSION = 2;
 
    private final int[][] edits;
+   // the costs compiled for the last smoothing asked for
+   private volatile CompiledWeightedEdits compiled = null;
 
    public WeightedEdits() {
       // init edits to some default values
@@ -37,6 +42,7 @@ public class WeightedEdits {
     * Reset all costs to zero.
     */
    public void reset() {
+      costsChanged();
       for (int x = 0; x < edits.length; x++) {
          for (int y = 0; y < edits[x].length; y++) {
             edits[x][y] = 0;
@@ -58,13 +64,11 @@ public class WeightedEdits {
    }
 
    public void load(Reader r) throws IOException {
+      costsChanged();
       BufferedReader reader = new BufferedReader(r);
       try {
-         while (reader.ready()) {
-            String line = reader.readLine();
-            if (line == null) {
-               continue;
-            }
+         String line;
+         while ((line = reader.readLine()) != null) {
             String[] fields = line.split(",");
             String[] tokens = fields[0].split("\\|");
             int cost = Integer.parseInt(fields[1]);
@@ -92,6 +96,100 @@ public class WeightedEdits {
       writer.close();
    }
 
+   /**
+    * Compute the checksum of a text model, which saveBinary records so a binary model converted from
+    * a different text model can be detected without parsing the text
+    * @param is text model; closed when done
+    * @return checksum
+    * @throws java.io.IOException if the stream is unreadable
+    */
+   public static long getChecksum(InputStream is) throws IOException {
+      CRC32 crc = new CRC32();
+      try {
+         byte[] buf = new byte[8192];
+         int len;
+         while ((len = is.read(buf)) > 0) {
+            crc.update(buf, 0, len);
+         }
+      }
+      finally {
+         is.close();
+      }
+      return crc.getValue();
+   }
+
+   /**
+    * Load a weighted edits object saved by saveBinary, which is faster than parsing the text format
+    * @param is stream to read from; closed when done
+    * @return checksum of the text model the binary model was converted from
+    * @throws java.io.IOException if the stream is unreadable or isn't a weighted edits file for these tokens
+    */
+   public long loadBinary(InputStream is) throws IOException {
+      costsChanged();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+      try {
+         if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary weighted edits file");
+         }
+         int version = in.readInt();
+         if (version != VERSION) {
+            throw new IOException("Binary weighted edits version "+version+" isn't supported");
+         }
+         long checksum = in.readLong();
+         // the tokens are saved so a file saved with different token ids can't be misread
+         int numTokens = in.readInt();
+         int[] tokenIds = new int[numTokens];
+         for (int i = 0; i < numTokens; i++) {
+            String token = in.readUTF();
+            tokenIds[i] = (token.length() == 0 ? WeightedEditDistanceTokenizer.EMPTY_TOKEN : WeightedEditDistanceTokenizer.getPhonemeId(token));
+            if (tokenIds[i] < 0) {
+               throw new IOException("Unknown token "+token);
+            }
+         }
+         for (int i = 0; i < numTokens; i++) {
+            for (int j = i; j < numTokens; j++) {
+               int cost = in.readInt();
+               edits[Math.min(tokenIds[i], tokenIds[j])][Math.max(tokenIds[i], tokenIds[j])] = cost;
+            }
+         }
+         return checksum;
+      }
+      finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Save a weighted edits object in a binary format that loads faster than the text format
+    * @param f file to save into
+    * @param textChecksum getChecksum of the text model these edits were loaded from
+    * @throws java.io.IOException if file cannot be written
+    */
+   public void saveBinary(File f, long textChecksum) throws IOException {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+      try {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeLong(textChecksum);
+         out.writeInt(edits.length);
+         for (int i = 0; i < edits.length; i++) {
+            out.writeUTF(WeightedEditDistanceTokenizer.getToken(i));
+         }
+         for (int i = 0; i < edits.length; i++) {
+            for (int j = i; j < edits[i].length; j++) {
+               out.writeInt(edits[i][j]);
+            }
+         }
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   private void costsChanged() {
+      compiled = null;
+   }
+
    /**
     * Get the cost of a src/tar edit
     * @param sourceToken source position
@@ -107,6 +205,21 @@ public class WeightedEdits {
       return edits[sourceToken][targetToken];
    }
 
+   /**
+    * Compile the costs for scoring with the specified positional weight smoothing.
+    * The compiled costs are kept until the costs change, so call this after training is done.
+    * @param smooth positional weight smoothing
+    * @return compiled costs
+    */
+   public CompiledWeightedEdits compile(double smooth) {
+      CompiledWeightedEdits c = compiled;
+      if (c == null || c.getSmooth() != smooth) {
+         c = new CompiledWeightedEdits(this, smooth);
+         compiled = c;
+      }
+      return c;
+   }
+
    /**
     * Add count instances to the src/tar edit
     * @param sourceToken source position
@@ -120,6 +233,7 @@ public class WeightedEdits {
          targetToken = swap;
       }
       edits[sourceToken][targetToken] += count;
+      costsChanged();
    }
 
    /**
@@ -127,6 +241,7 @@ public class WeightedEdits {
     * @param smooth boolean indicating whether or not to smooth cost score by adding 1 to all costs
     */
    public void calcCosts(boolean smooth) {
+      costsChanged();
       // first go through and sum the counts
       int sum = 0;
       for (int i = 0; i < edits.length; i++) {
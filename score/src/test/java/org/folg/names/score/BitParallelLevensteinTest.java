@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import com.wcohen.ss.Levenstein;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class BitParallelLevensteinTest extends TestCase {
+   public BitParallelLevensteinTest(String name) {
+      super(name);
+   }
+
+   private String randomString(Random random, String alphabet, int maxLength) {
+      StringBuilder buf = new StringBuilder();
+      int length = random.nextInt(maxLength+1);
+      for (int i = 0; i < length; i++) {
+         buf.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      return buf.toString();
+   }
+
+   public void testSameAsSecondString() {
+      Levenstein levenstein = new Levenstein();
+      BitParallelLevenstein bitParallelLevenstein = new BitParallelLevenstein();
+      assertEquals(levenstein.score("dallan", "allan"), bitParallelLevenstein.score("dallan", "allan"));
+      assertEquals(levenstein.score("", "quass"), bitParallelLevenstein.score("", "quass"));
+      assertEquals(levenstein.score("Quass", "quast"), bitParallelLevenstein.score("Quass", "quast"));
+
+      // include strings longer than 64 characters, and characters outside ascii
+      Random random = new Random(0);
+      String[] alphabets = {"abc", "aAbBcdef", "abc\u00e9\u00c9\u4e2d"};
+      for (int i = 0; i < 20000; i++) {
+         String alphabet = alphabets[i % alphabets.length];
+         int maxLength = (i % 10 == 0 ? 200 : 20);
+         String s = randomString(random, alphabet, maxLength);
+         String t = randomString(random, alphabet, maxLength);
+         assertEquals(s+" "+t, levenstein.score(s, t), bitParallelLevenstein.score(s, t));
+      }
+   }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.folg.names.score;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CodePackerTest extends TestCase {
+   public CodePackerTest(String name) {
+      super(name);
+   }
+
+   private static String repeat(char c, int n) {
+      char[] chars = new char[n];
+      Arrays.fill(chars, c);
+      return new String(chars);
+   }
+
+   public void testNull() {
+      assertEquals(0L, CodePacker.pack(null));
+      assertTrue(CodePacker.pack("") != 0L);
+      assertTrue(CodePacker.pack("0") != 0L);
+      assertTrue(CodePacker.pack("A") != 0L);
+   }
+
+   public void testDigitsLimit() {
+      // up to 16 digits, with or without a leading letter, pack exactly
+      assertTrue(CodePacker.pack(repeat('9', 16)) >= 0);
+      assertTrue(CodePacker.pack("Z" + repeat('9', 16)) >= 0);
+      assertTrue(CodePacker.pack(repeat('9', 16)) != CodePacker.pack("9" + repeat('9', 14) + "8"));
+      // more are hashed
+      assertTrue(CodePacker.pack(repeat('9', 17)) < 0);
+      assertTrue(CodePacker.pack("Z" + repeat('9', 17)) < 0);
+   }
+
+   public void testLettersAndDigitsLimit() {
+      // up to 11 letters and digits pack exactly
+      assertTrue(CodePacker.pack(repeat('Z', 11)) >= 0);
+      assertTrue(CodePacker.pack("Z9Z9Z9Z9Z9Z") >= 0);
+      assertTrue(CodePacker.pack(repeat('Z', 11)) != CodePacker.pack(repeat('Z', 10) + "Y"));
+      // more are hashed
+      assertTrue(CodePacker.pack(repeat('Z', 12)) < 0);
+      // as are codes with other characters
+      assertTrue(CodePacker.pack("A-1") < 0);
+   }
+
+   public void testLeadingLetter() {
+      assertTrue(CodePacker.pack("A123") != CodePacker.pack("123"));
+      assertTrue(CodePacker.pack("A") != CodePacker.pack(""));
+      assertTrue(CodePacker.pack("0123") != CodePacker.pack("123"));
+      assertTrue(CodePacker.pack("A1B") != CodePacker.pack("1B"));
+      assertTrue(CodePacker.pack("AB") != CodePacker.pack("B"));
+   }
+
+   public void testDistinct() {
+      // all codes of up to 4 characters over a few letters and digits pack to different values
+      char[] alphabet = {'A', 'B', 'Z', '0', '1', '9'};
+      List<String> codes = new ArrayList<String>();
+      codes.add("");
+      int start = 0;
+      for (int length = 1; length <= 4; length++) {
+         int end = codes.size();
+         for (int i = start; i < end; i++) {
+            for (char c : alphabet) {
+               codes.add(codes.get(i) + c);
+            }
+         }
+         start = end;
+      }
+      Map<Long,String> packedCodes = new HashMap<Long,String>();
+      for (String code : codes) {
+         long packed = CodePacker.pack(code);
+         assertTrue(code, packed >= 0);
+         String other = packedCodes.put(packed, code);
+         assertNull(code + " packs the same as " + other, other);
+      }
+   }
+
+   public void testSameCode() {
+      String code = repeat('9', 20);
+      long packed = CodePacker.pack(code);
+      assertTrue(packed < 0);
+      assertTrue(CodePacker.sameCode(packed, code, CodePacker.pack(repeat('9', 20)), repeat('9', 20)));
+      assertFalse(CodePacker.sameCode(packed, code, CodePacker.pack(repeat('9', 21)), repeat('9', 21)));
+      // hashed codes that happen to share a value are compared as strings
+      assertFalse(CodePacker.sameCode(packed, code, packed, repeat('8', 20)));
+      // exactly packed codes are compared by value alone
+      long packedShort = CodePacker.pack("S530");
+      assertTrue(CodePacker.sameCode(packedShort, "S530", CodePacker.pack("S530"), "S530"));
+      assertFalse(CodePacker.sameCode(packedShort, "S530", CodePacker.pack("S531"), "S531"));
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.folg.names.score;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class CodesDictionaryTest extends TestCase {
+   public CodesDictionaryTest(String name) {
+      super(name);
+   }
+
+   private static Codes newCodes(int[] wedTokens, String nysCode, String sdxCode) {
+      Codes codes = new Codes();
+      codes.wedTokens = wedTokens;
+      codes.nysCode = nysCode;
+      codes.sdxCode = sdxCode;
+      codes.refSdxCode = "R1";
+      codes.dmSdxCode = "123";
+      codes.pack();
+      return codes;
+   }
+
+   private static byte[] write(List<String> names, List<Codes> codes) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      CodesDictionary.write(out, true, names, codes);
+      return out.toByteArray();
+   }
+
+   // return the position of the name of a token in the token table
+   private static int getTokenPos(byte[] bytes, int tokenId) {
+      int pos = 20;
+      for (int i = 0; i < tokenId; i++) {
+         pos += 2 + (((bytes[pos] & 0xff) << 8) | (bytes[pos+1] & 0xff));
+      }
+      return pos + 2;
+   }
+
+   public void testReadWrite() throws IOException {
+      int empty = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      List<String> names = Arrays.asList("jones", "smith");
+      List<Codes> codes = Arrays.asList(newCodes(new int[] {1, 2, empty}, "JAN", "J520"),
+                                        newCodes(new int[] {3}, null, "S530"));
+      CodesDictionary dictionary = CodesDictionary.read(new ByteArrayInputStream(write(names, codes)));
+      assertTrue(dictionary.isSurname());
+      assertEquals(2, dictionary.size());
+      Codes jones = dictionary.get("jones");
+      assertTrue(Arrays.equals(new int[] {1, 2, empty}, jones.wedTokens));
+      assertEquals("JAN", jones.nysCode);
+      assertEquals("J520", jones.sdxCode);
+      assertEquals(CodePacker.pack("J520"), jones.packedSdxCode);
+      Codes smith = dictionary.get("smith");
+      assertTrue(Arrays.equals(new int[] {3}, smith.wedTokens));
+      assertNull(smith.nysCode);
+      assertNull(dictionary.get("smyth"));
+   }
+
+   public void testTokenIdsChanged() throws IOException {
+      // find two tokens with names of the same length
+      int token1 = -1;
+      int token2 = -1;
+      for (int i = 0; i < WeightedEditDistanceTokenizer.EMPTY_TOKEN && token2 < 0; i++) {
+         for (int j = i+1; j < WeightedEditDistanceTokenizer.EMPTY_TOKEN; j++) {
+            if (WeightedEditDistanceTokenizer.getToken(i).length() == WeightedEditDistanceTokenizer.getToken(j).length()) {
+               token1 = i;
+               token2 = j;
+               break;
+            }
+         }
+      }
+      assertTrue(token2 > 0);
+      byte[] bytes = write(Arrays.asList("name"), Arrays.asList(newCodes(new int[] {token1, token2, token1}, "NAN", "N500")));
+
+      // a dictionary built by a tokenizer that numbered the two tokens the other way around
+      int pos1 = getTokenPos(bytes, token1);
+      int pos2 = getTokenPos(bytes, token2);
+      int len = WeightedEditDistanceTokenizer.getToken(token1).length();
+      byte[] swap = Arrays.copyOfRange(bytes, pos1, pos1 + len);
+      System.arraycopy(bytes, pos2, bytes, pos1, len);
+      System.arraycopy(swap, 0, bytes, pos2, len);
+      Codes codes = CodesDictionary.read(new ByteArrayInputStream(bytes)).get("name");
+      assertTrue(Arrays.equals(new int[] {token2, token1, token2}, codes.wedTokens));
+
+      // a dictionary built with a token this tokenizer doesn't have
+      Arrays.fill(bytes, pos1, pos1 + len, (byte)'Q');
+      try {
+         CodesDictionary.read(new ByteArrayInputStream(bytes));
+         fail("Read a dictionary with an unknown token");
+      }
+      catch (IOException e) {
+         // expected
+      }
+   }
+
+   public void testVersion() throws IOException {
+      byte[] bytes = write(Arrays.asList("name"), Arrays.asList(newCodes(new int[] {1}, "NAN", "N500")));
+      bytes[7]--;
+      try {
+         CodesDictionary.read(new ByteArrayInputStream(bytes));
+         fail("Read an old dictionary");
+      }
+      catch (IOException e) {
+         // expected
+      }
+   }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import com.sun.speech.freetts.lexicon.LetterToSound;
+import com.sun.speech.freetts.lexicon.LetterToSoundImpl;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+public class CompiledLetterToSoundTest extends TestCase {
+   public CompiledLetterToSoundTest(String name) {
+      super(name);
+   }
+
+   // the original tokenizer, built on FreeTTS
+   private static int[] freettsTokenize(LetterToSound lts, String s) {
+      if (s.length() > 2 && s.charAt(0) == 'y') {
+         char c = s.charAt(1);
+         if (c != 'a' && c != 'e' && c != 'i' && c != 'o' && c != 'u') {
+            s = "i"+s.substring(1);
+         }
+      }
+      String[] phonemes = lts.getPhones(s, null);
+      if (phonemes == null || phonemes.length == 0) {
+         phonemes = (s.equals("e") ? new String[] {"iy1"} : s.equals("ae") ? new String[] {"ey1"} :
+                     s.equals("h") || s.equals("hh") ? new String[] {"hh"} : new String[0]);
+      }
+      if (s.length() > 0 && (s.charAt(0) == 'a' || s.charAt(0) == 'o') && phonemes.length > 0 && phonemes[0].equals("r")) {
+         String[] temp = new String[phonemes.length+1];
+         temp[0] = "ax";
+         System.arraycopy(phonemes, 0, temp, 1, phonemes.length);
+         phonemes = temp;
+      }
+      int[] tokens = new int[phonemes.length];
+      for (int i = 0; i < tokens.length; i++) {
+         tokens[i] = WeightedEditDistanceTokenizer.getTokenId(phonemes[i]);
+      }
+      return tokens;
+   }
+
+   public void testSameAsFreetts() throws Exception {
+      LetterToSound lts = new LetterToSoundImpl(getClass().getClassLoader().getResource("cmulex_lts.bin"), true);
+      WeightedEditDistanceTokenizer tokenizer = new WeightedEditDistanceTokenizer();
+      int cnt = 0;
+      for (String file : new String[] {"givennameSoundexMap.txt", "surnameSoundexMap.txt"}) {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(file), "UTF8"));
+         String line;
+         while ((line = reader.readLine()) != null) {
+            // line is code: names
+            String[] names = line.split("[: ]+",2)[1].split("[, ]+");
+            for (String name : names) {
+               assertTrue(name, Arrays.equals(freettsTokenize(lts, name), tokenizer.tokenize(name)));
+               cnt++;
+            }
+         }
+         reader.close();
+      }
+      for (String name : new String[] {"e", "h", "ae", "aragon", "orr", "ybarra", "yves"}) {
+         assertTrue(name, Arrays.equals(freettsTokenize(lts, name), tokenizer.tokenize(name)));
+      }
+      assertTrue(cnt > 0);
+   }
+}
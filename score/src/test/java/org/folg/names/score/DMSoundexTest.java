@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+public class DMSoundexTest extends TestCase {
+   private DMSoundex dmSoundex;
+
+   public DMSoundexTest(String name) {
+      super(name);
+   }
+
+   protected void setUp() {
+      dmSoundex = new DMSoundex();
+   }
+
+   private long[] pack(String... codes) {
+      long[] packed = new long[codes.length];
+      for (int i = 0; i < codes.length; i++) {
+         packed[i] = CodePacker.pack(codes[i]);
+      }
+      Arrays.sort(packed);
+      return packed;
+   }
+
+   public void testEncode() {
+      assertEquals("56", dmSoundex.encode("chaim"));
+      assertEquals("1546", dmSoundex.encode("jackson"));
+      assertEquals("9475", dmSoundex.encode("rzepka"));
+      assertEquals("4794", dmSoundex.encode("schwarz"));
+      assertEquals("", dmSoundex.encode(""));
+   }
+
+   public void testEncodeAll() {
+      assertTrue(Arrays.equals(pack("46", "56"), dmSoundex.encodeAll("chaim")));
+      assertTrue(Arrays.equals(pack("1546", "14546", "4546", "44546"), dmSoundex.encodeAll("jackson")));
+      assertTrue(Arrays.equals(pack("475", "9475"), dmSoundex.encodeAll("rzepka")));
+      assertTrue(Arrays.equals(pack("594"), dmSoundex.encodeAll("kurtz")));
+      assertTrue(Arrays.equals(pack(""), dmSoundex.encodeAll("")));
+      // a long run of j's reaches the same codes many ways: 1 or 4 followed by up to five 4's
+      char[] js = new char[100];
+      Arrays.fill(js, 'j');
+      assertEquals(12, dmSoundex.encodeAll(new String(js)).length);
+
+      assertTrue(DMSoundex.intersect(dmSoundex.encodeAll("chaim"), dmSoundex.encodeAll("haim")));
+      assertFalse(DMSoundex.intersect(dmSoundex.encodeAll("chaim"), dmSoundex.encodeAll("kurtz")));
+   }
+
+   public void testSameAsRuleList() throws Exception {
+      int cnt = 0;
+      for (int maxCodeLength : new int[] {4, 6}) {
+         DMSoundex dmSoundex = new DMSoundex(maxCodeLength);
+         RuleListDMSoundex ruleListDMSoundex = new RuleListDMSoundex(maxCodeLength);
+         for (String file : new String[] {"givennameSoundexMap.txt", "surnameSoundexMap.txt"}) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(file), "UTF8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+               // line is code: names
+               String[] names = line.split("[: ]+",2)[1].split("[, ]+");
+               for (String name : names) {
+                  assertEquals(name, ruleListDMSoundex.encode(name), dmSoundex.encode(name));
+                  assertTrue(name, Arrays.equals(ruleListDMSoundex.encodeAll(name), dmSoundex.encodeAll(name)));
+                  cnt++;
+               }
+            }
+            reader.close();
+         }
+      }
+      assertTrue(cnt > 0);
+   }
+
+   public void testFirstCodeIsInAllCodes() throws Exception {
+      int cnt = 0;
+      for (String file : new String[] {"givennameSoundexMap.txt", "surnameSoundexMap.txt"}) {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(file), "UTF8"));
+         String line;
+         while ((line = reader.readLine()) != null) {
+            // line is code: names
+            String[] names = line.split("[: ]+",2)[1].split("[, ]+");
+            for (String name : names) {
+               assertTrue(name, Arrays.binarySearch(dmSoundex.encodeAll(name), CodePacker.pack(dmSoundex.encode(name))) >= 0);
+               cnt++;
+            }
+         }
+         reader.close();
+      }
+      assertTrue(cnt > 0);
+   }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.util.Random;
+
+public class FSTTest extends TestCase {
+   public FSTTest(String name) {
+      super(name);
+   }
+
+   private int[] randomTokens(Random random, int length) {
+      int[] tokens = new int[length];
+      for (int i = 0; i < length; i++) {
+         tokens[i] = random.nextInt(WeightedEditDistanceTokenizer.EMPTY_TOKEN);
+      }
+      return tokens;
+   }
+
+   private static WeightedEdits loadWeightedEdits(String prefix) throws Exception {
+      WeightedEdits we = new WeightedEdits();
+      we.load(FSTTest.class.getClassLoader().getResourceAsStream(prefix + "WeightedEdits.model"));
+      return we;
+   }
+
+   // tokens drawn from just a few tokens, so many paths tie on total cost
+   private int[] randomTokens(Random random, int length, int[] tokenChoices) {
+      int[] tokens = new int[length];
+      for (int i = 0; i < length; i++) {
+         tokens[i] = tokenChoices[random.nextInt(tokenChoices.length)];
+      }
+      return tokens;
+   }
+
+   // the lowest total cost and, of the paths having it, the lowest weighted cost, found by trying every path from (x,y)
+   private static class BestPath {
+      int cost = Integer.MAX_VALUE;
+      double weightedCost = Double.POSITIVE_INFINITY;
+   }
+
+   private void searchPaths(WeightedEdits we, double smooth, int[] source, int[] target, int x, int y,
+                            int edits, int cost, double weightedCost, BestPath best) {
+      if (x == source.length && y == target.length) {
+         if (cost < best.cost || (cost == best.cost && weightedCost < best.weightedCost)) {
+            best.cost = cost;
+            best.weightedCost = weightedCost;
+         }
+         return;
+      }
+      int emptyToken = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      if (x < source.length) {
+         int editCost = we.getCost(source[x], emptyToken);
+         searchPaths(we, smooth, source, target, x+1, y, edits+1, cost + editCost, weightedCost + (editCost * 1.0) / (edits+smooth), best);
+      }
+      if (y < target.length) {
+         int editCost = we.getCost(emptyToken, target[y]);
+         searchPaths(we, smooth, source, target, x, y+1, edits+1, cost + editCost, weightedCost + (editCost * 1.0) / (edits+smooth), best);
+      }
+      if (x < source.length && y < target.length) {
+         int editCost = we.getCost(source[x], target[y]);
+         searchPaths(we, smooth, source, target, x+1, y+1, edits+1, cost + editCost, weightedCost + (editCost * 1.0) / (edits+smooth), best);
+      }
+   }
+
+   private void checkExhaustive(String prefix, double smooth) throws Exception {
+      WeightedEdits we = loadWeightedEdits(prefix);
+      CompiledWeightedEdits edits = we.compile(smooth);
+      Random random = new Random(1);
+      FST fst = new FST();
+      for (int i = 0; i < 3000; i++) {
+         int[] tokenChoices = randomTokens(random, 2 + random.nextInt(3));
+         int[] source = randomTokens(random, 1 + random.nextInt(6), tokenChoices);
+         int[] target = randomTokens(random, 1 + random.nextInt(6), tokenChoices);
+         BestPath best = new BestPath();
+         searchPaths(we, smooth, source, target, 0, 0, 0, 0, 0.0, best);
+         double expected = best.weightedCost / Math.max(edits.getMinCost(source), edits.getMinCost(target));
+         fst.init(source, target);
+         assertEquals(expected, fst.getMinPathScore(we, smooth), expected * 1e-12);
+      }
+   }
+
+   public void testSameAsExhaustiveSearch() throws Exception {
+      checkExhaustive("surname", 5);
+      checkExhaustive("givenname", 2.5);
+   }
+
+   private void checkDirection(String prefix, double smooth) throws Exception {
+      WeightedEdits we = loadWeightedEdits(prefix);
+      Random random = new Random(2);
+      FST fst = new FST();
+      for (int i = 0; i < 2000; i++) {
+         int[] tokenChoices = randomTokens(random, 2 + random.nextInt(10));
+         int[] source = randomTokens(random, 1 + random.nextInt(20), tokenChoices);
+         int[] target = randomTokens(random, 1 + random.nextInt(20), tokenChoices);
+         fst.init(source, target);
+         double forward = fst.getMinPathScore(we, smooth);
+         fst.init(target, source);
+         double reverse = fst.getMinPathScore(we, smooth);
+         assertEquals(forward, reverse, forward * 1e-12);
+      }
+   }
+
+   public void testDirectionIndependent() throws Exception {
+      checkDirection("surname", 5);
+      checkDirection("givenname", 2.5);
+   }
+
+   // what WeightedEditDistance used to compute: the smaller of the Viterbi path scores in both directions
+   private double getBestPathScores(FST fst, WeightedEdits we, double smooth, int[] source, int[] target) {
+      fst.init(source, target);
+      fst.computeBestPath(we);
+      double forward = fst.getBestPathScore(we, smooth);
+      fst.init(target, source);
+      fst.computeBestPath(we);
+      double reverse = fst.getBestPathScore(we, smooth);
+      return Math.min(forward, reverse);
+   }
+
+   private void checkPathScore(WeightedEdits we, double smooth, Random random) throws Exception {
+      FST fst = new FST();
+      for (int i = 0; i < 3000; i++) {
+         // few distinct tokens, so many paths tie and the tie-breaking matters
+         int[] tokenChoices = randomTokens(random, 2 + random.nextInt(10));
+         int[] source = randomTokens(random, 1 + random.nextInt(20), tokenChoices);
+         int[] target = randomTokens(random, 1 + random.nextInt(20), tokenChoices);
+         double expected = getBestPathScores(fst, we, smooth, source, target);
+         fst.init(source, target);
+         assertEquals(expected, fst.getPathScore(we, smooth));
+         fst.initScore(source, target);
+         assertEquals(expected, fst.getPathScore(we, smooth));
+         fst.initScore(target, source);
+         assertEquals(expected, fst.getPathScore(we, smooth));
+      }
+   }
+
+   public void testPathScoreSameAsBestPathScore() throws Exception {
+      Random random = new Random(4);
+      checkPathScore(loadWeightedEdits("surname"), 5, random);
+      checkPathScore(loadWeightedEdits("givenname"), 2.5, random);
+      checkPathScore(newCheapInsertDeleteModel(random), 1, random);
+   }
+
+   public void testInitScoreSameAsInit() throws Exception {
+      WeightedEdits we = new WeightedEdits();
+      we.load(getClass().getClassLoader().getResourceAsStream("surnameWeightedEdits.model"));
+      CompiledWeightedEdits edits = we.compile(5);
+      Random random = new Random(0);
+      // reuse both FSTs across pairs of different sizes, as Scorer does
+      FST fullFst = new FST();
+      FST rollingFst = new FST();
+      for (int i = 0; i < 2000; i++) {
+         int[] source = randomTokens(random, 1 + random.nextInt(30));
+         int[] target = randomTokens(random, 1 + random.nextInt(30));
+         double maxScore = (i % 2 == 0 ? Double.POSITIVE_INFINITY : 1 + random.nextDouble());
+         double sourceMinCost = edits.getMinCost(source);
+         double targetMinCost = edits.getMinCost(target);
+         fullFst.init(source, target);
+         rollingFst.initScore(source, target);
+         assertEquals(fullFst.getMinPathScore(edits, sourceMinCost, targetMinCost, maxScore),
+                      rollingFst.getMinPathScore(edits, sourceMinCost, targetMinCost, maxScore));
+         assertEquals(fullFst.getPathScore(edits, sourceMinCost, targetMinCost, maxScore),
+                      rollingFst.getPathScore(edits, sourceMinCost, targetMinCost, maxScore));
+         // training still works after scoring
+         rollingFst.init(source, target);
+         rollingFst.computeBestPath(we);
+         assertTrue(rollingFst.getBestPathScore(we, 5) >= rollingFst.getPathScore(we, 5));
+         assertTrue(rollingFst.getPathScore(we, 5) >= rollingFst.getMinPathScore(we, 5) - 1e-9);
+      }
+   }
+
+   // a model where substituting different tokens costs more than inserting or deleting, and varies widely,
+   // so the path in the band can cost more than the lower bound for the paths outside it
+   private static WeightedEdits newCheapInsertDeleteModel(Random random) throws Exception {
+      StringBuilder buf = new StringBuilder();
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      int emptyToken = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      for (int i = 0; i < numTokens; i++) {
+         for (int j = i; j < numTokens; j++) {
+            int cost = (j == emptyToken ? 10 + random.nextInt(20) : i == j ? 1 + random.nextInt(5) : 25 + random.nextInt(72));
+            buf.append(WeightedEditDistanceTokenizer.getToken(i)).append('|')
+               .append(WeightedEditDistanceTokenizer.getToken(j)).append(',').append(cost).append('\n');
+         }
+      }
+      WeightedEdits we = new WeightedEdits();
+      we.load(new StringReader(buf.toString()));
+      return we;
+   }
+
+   // a model where substituting any token costs the same as deleting one and inserting another,
+   // so every path has the same total cost and only the weighted costs tell them apart
+   private static WeightedEdits newTiedModel() throws Exception {
+      StringBuilder buf = new StringBuilder();
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      int emptyToken = WeightedEditDistanceTokenizer.EMPTY_TOKEN;
+      for (int i = 0; i < numTokens; i++) {
+         for (int j = i; j < numTokens; j++) {
+            int cost = (j == emptyToken ? 2 : 4);
+            buf.append(WeightedEditDistanceTokenizer.getToken(i)).append('|')
+               .append(WeightedEditDistanceTokenizer.getToken(j)).append(',').append(cost).append('\n');
+         }
+      }
+      WeightedEdits we = new WeightedEdits();
+      we.load(new StringReader(buf.toString()));
+      return we;
+   }
+
+   private double getScore(FST fst, CompiledWeightedEdits edits, double sourceMinCost, double targetMinCost, double maxScore,
+                           boolean exact) {
+      return exact ? fst.getMinPathScore(edits, sourceMinCost, targetMinCost, maxScore)
+                   : fst.getPathScore(edits, sourceMinCost, targetMinCost, maxScore);
+   }
+
+   private void checkBounded(WeightedEdits we, double smooth, Random random, boolean exact) {
+      CompiledWeightedEdits edits = we.compile(smooth);
+      FST fst = new FST();
+      for (int i = 0; i < 1000; i++) {
+         // names without tokens in common can only be substituted at the cost of different tokens
+         int[] tokenChoices = randomTokens(random, 2 + random.nextInt(10));
+         int[] sourceChoices = tokenChoices;
+         int[] targetChoices = tokenChoices;
+         if (random.nextBoolean()) {
+            sourceChoices = new int[] {tokenChoices[0]};
+            targetChoices = new int[] {tokenChoices[1]};
+         }
+         int[] source = randomTokens(random, 1 + random.nextInt(15), sourceChoices);
+         int[] target = randomTokens(random, 1 + random.nextInt(15), targetChoices);
+         double sourceMinCost = edits.getMinCost(source);
+         double targetMinCost = edits.getMinCost(target);
+         fst.init(source, target);
+         double score = getScore(fst, edits, sourceMinCost, targetMinCost, Double.POSITIVE_INFINITY, exact);
+         double[] maxScores = {score, score * (1 - 1e-6), score * (1 + 1e-6), score * 1.5, score * 3, score * 2 * random.nextDouble(), 0.0};
+         for (double maxScore : maxScores) {
+            // alternate between the full table and rolling rows
+            if (random.nextBoolean()) {
+               fst.init(source, target);
+            }
+            else {
+               fst.initScore(source, target);
+            }
+            assertEquals(score <= maxScore ? score : Double.POSITIVE_INFINITY,
+                         getScore(fst, edits, sourceMinCost, targetMinCost, maxScore, exact));
+         }
+      }
+   }
+
+   public void testBoundedSameAsUnbounded() throws Exception {
+      Random random = new Random(3);
+      for (boolean exact : new boolean[] {false, true}) {
+         checkBounded(loadWeightedEdits("surname"), 5, random, exact);
+         checkBounded(loadWeightedEdits("givenname"), 2.5, random, exact);
+         for (int i = 0; i < 5; i++) {
+            checkBounded(newCheapInsertDeleteModel(random), 1, random, exact);
+         }
+         checkBounded(newTiedModel(), 1, random, exact);
+      }
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+public class NysiisTest extends TestCase {
+   private Nysiis nysiis;
+   private RegexNysiis regexNysiis;
+
+   public NysiisTest(String name) {
+      super(name);
+   }
+
+   protected void setUp() {
+      nysiis = new Nysiis();
+      regexNysiis = new RegexNysiis();
+   }
+
+   private String encode(org.apache.commons.codec.StringEncoder encoder, String name) throws Exception {
+      try {
+         return (String)encoder.encode(name);
+      }
+      catch (StringIndexOutOfBoundsException e) {
+         return null;
+      }
+   }
+
+   private void assertSame(String name) throws Exception {
+      assertEquals(name, encode(regexNysiis, name), encode(nysiis, name));
+   }
+
+   public void testSameAsRegex() throws Exception {
+      int cnt = 0;
+      for (String file : new String[] {"givennameSoundexMap.txt", "surnameSoundexMap.txt"}) {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(file), "UTF8"));
+         String line;
+         while ((line = reader.readLine()) != null) {
+            // line is code: names
+            String[] names = line.split("[: ]+",2)[1].split("[, ]+");
+            for (String name : names) {
+               assertSame(name);
+               cnt++;
+            }
+         }
+         reader.close();
+      }
+      assertTrue(cnt > 0);
+   }
+
+   public void testEdgeCases() throws Exception {
+      for (String name : new String[] {"", " ", "-", "dt", "rt", "nd", "ndt", "mac", "kn", "k", "ph", "pf", "sch", "schee", "bie",
+                                       "smith jr", "Smith  Sr ", "smith iv", "smith\tvii ", "jr", " jr", "o'brien", "van der berg",
+                                       "evhkhkn", "ahhh", "schsch", "awwe", "dalays", "m\u00fcller", "stra\u00dfe", "\u0131vy"}) {
+         assertSame(name);
+      }
+      assertNull(encode(nysiis, ""));
+      assertEquals("SNAT", nysiis.encode("Smith Jr"));
+   }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Daitch-Mokotov soundex algorithm
+ *
+ * This is the original implementation, which looks up every substring at each position in a map per code table and length;
+ * DMSoundex produces the same codes from a trie.  It is kept as the reference for testing DMSoundex.
+ * encodeAll branches on every alternate code without remembering the branches already taken,
+ * so it is exponential in the number of alternates and only suitable for names of ordinary length.
+ */
+public class RuleListDMSoundex implements org.apache.commons.codec.StringEncoder
+{
+   private Map<String,String>[] startCodeMaps;
+   private Map<String,String>[] beforeVowelCodeMaps;
+   private Map<String,String>[] otherCodeMaps;
+   private Map<String,String>[] alternateCodeMaps;
+   private int maxCodeLength;
+
+   @SuppressWarnings("unchecked")
+   private Map<String,String>[] generateMaps(String[][] codeArray) {
+      Map<String,String>[] maps = new HashMap[DMSoundex.MAX_CODE_LEN];
+
+      for (int i = 0; i < DMSoundex.MAX_CODE_LEN; i++) {
+         maps[i] = new HashMap<String,String>();
+      }
+      for (String[] codes : codeArray) {
+         String code = codes[0];
+         for (int i = 1; i < codes.length; i++) {
+            int len = codes[i].length();
+            maps[len-1].put(codes[i], code);
+         }
+      }
+
+      return maps;
+   }
+
+   public RuleListDMSoundex() {
+      this(6);
+   }
+
+   public RuleListDMSoundex(int maxCodeLength) {
+      startCodeMaps = generateMaps(DMSoundex.START_CODE_ARRAY);
+      beforeVowelCodeMaps = generateMaps(DMSoundex.BEFORE_VOWEL_CODE_ARRAY);
+      otherCodeMaps = generateMaps(DMSoundex.OTHER_CODE_ARRAY);
+      alternateCodeMaps = generateMaps(DMSoundex.ALTERNATE_CODE_ARRAY);
+      this.maxCodeLength = maxCodeLength;
+   }
+
+   public Object encode(Object o) {
+      return encode((String)o);
+   }
+
+   private void append(StringBuilder buf, String code, boolean prevSkipped) {
+      if (prevSkipped || code.length() != 1 || buf.length() == 0 || buf.charAt(buf.length()-1) != code.charAt(0)) {
+         buf.append(code);
+      }
+   }
+
+   // encode s starting at pos into buf; if allCodes is not null, also branch on the alternate codes
+   private void encode(String s, int pos, boolean atBegin, boolean prevSkipped, StringBuilder buf, Set<String> allCodes) {
+      while (pos < s.length() && buf.length() < maxCodeLength) {
+         int codeLen = 0;
+         String code = null;
+         for (int len = Math.min(s.length() - pos, DMSoundex.MAX_CODE_LEN); len > 0; len--) {
+            int nextPos = pos+len;
+            String token = s.substring(pos, nextPos);
+            if (atBegin) {
+               code = startCodeMaps[len-1].get(token);
+            }
+            else if (nextPos < s.length() && Arrays.binarySearch(DMSoundex.VOWELS, s.charAt(nextPos)) >= 0) {
+               code = beforeVowelCodeMaps[len-1].get(token);
+            }
+            else {
+               code = otherCodeMaps[len-1].get(token);
+            }
+            if (code != null) {
+               codeLen = len;
+               break;
+            }
+         }
+         if (allCodes != null) {
+            for (int len = Math.min(s.length() - pos, DMSoundex.MAX_CODE_LEN); len >= codeLen && len > 0; len--) {
+               String alternateCode = alternateCodeMaps[len-1].get(s.substring(pos, pos+len));
+               if (alternateCode != null) {
+                  StringBuilder alternateBuf = new StringBuilder(buf);
+                  append(alternateBuf, alternateCode, prevSkipped);
+                  encode(s, pos+len, false, false, alternateBuf, allCodes);
+                  break;
+               }
+            }
+         }
+         atBegin = false;
+         if (code != null) {
+            append(buf, code, prevSkipped);
+            pos += codeLen;
+            prevSkipped = false;
+         }
+         else {
+            prevSkipped = true;
+            pos++;
+         }
+      }
+      if (buf.length() > maxCodeLength) {
+         buf.setLength(maxCodeLength);
+      }
+      if (allCodes != null) {
+         allCodes.add(buf.toString());
+      }
+   }
+
+   /**
+    *
+    * @param s must be romanized and in lower case
+    * @return
+    */
+   public String encode(String s) {
+      StringBuilder buf = new StringBuilder();
+      encode(s, 0, true, false, buf, null);
+      return buf.toString();
+   }
+
+   /**
+    * Return the codes for all combinations of the alternate codes, packed by CodePacker
+    * @param s must be romanized and in lower case
+    * @return distinct packed codes in ascending order
+    */
+   public long[] encodeAll(String s) {
+      Set<String> allCodes = new TreeSet<String>();
+      encode(s, 0, true, false, new StringBuilder(), allCodes);
+      Set<Long> packed = new TreeSet<Long>();
+      for (String code : allCodes) {
+         packed.add(CodePacker.pack(code));
+      }
+      long[] result = new long[packed.size()];
+      int i = 0;
+      for (long code : packed) {
+         result[i++] = code;
+      }
+      return result;
+   }
+}
@@ -18,6 +18,11 @@ package org.folg.names.score;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public class ScorerTest extends TestCase {
    public ScorerTest(String name) {
       super(name);
@@ -31,4 +36,111 @@ public class ScorerTest extends TestCase {
       scorer = Scorer.getSurnameInstance();
       assertEquals(937, (int)Math.floor(scorer.scoreNamePair("quass","quast")*1000));
    }
+
+   public void testScoreAgainst() throws Exception {
+      Scorer scorer = Scorer.getSurnameInstance();
+      String[] names = {"quast", "quass", "kwast", "smith", "a"};
+      double[] scores = scorer.scoreAgainst("quass", scorer.newCandidateSet(names));
+      assertEquals(names.length, scores.length);
+      for (int i = 0; i < names.length; i++) {
+         assertEquals(scorer.scoreNamePair("quass", names[i]), scores[i]);
+      }
+   }
+
+   // names sharing prefixes of different lengths, with names without tokens in the middle
+   private static String[] getPrefixNames() {
+      String[] bases = {"jonathanson", "johnston", "macdonaldson", "mcdonald", "vanderberg", "smithers", "kowalski"};
+      String[] suffixes = {"", "s", "e", "son", "berg"};
+      List<String> names = new ArrayList<String>();
+      for (String base : bases) {
+         for (int length = 1; length <= base.length(); length++) {
+            for (String suffix : suffixes) {
+               names.add(base.substring(0, length) + suffix);
+            }
+         }
+         if (names.size() > 100 && !names.contains("hhh")) {
+            names.add("hhh");
+            names.add("eux");
+         }
+      }
+      return names.toArray(new String[names.size()]);
+   }
+
+   private void checkScoreAgainst(Scorer scorer, String[] names) throws Exception {
+      CandidateSet candidates = scorer.newCandidateSet(names);
+      for (String query : new String[] {"jonathan", "mcdonalds", "smith", "vanderbergen", "a", "hhh"}) {
+         double[] scores = scorer.scoreAgainst(query, candidates);
+         assertEquals(names.length, scores.length);
+         for (int i = 0; i < names.length; i++) {
+            assertEquals(query + "/" + names[i], scorer.scoreNamePair(query, names[i]), scores[i]);
+         }
+      }
+   }
+
+   public void testScoreAgainstSharedPrefixes() throws Exception {
+      String[] names = getPrefixNames();
+      Scorer scorer = Scorer.getSurnameInstance();
+      // make sure the names exercise reusing the shared tokens, and skipping names without tokens
+      CandidateSet candidates = scorer.newCandidateSet(names);
+      ScoringWorkspace workspace = new ScoringWorkspace();
+      Set<Integer> sharedLengths = new HashSet<Integer>();
+      int noTokens = 0;
+      for (int k = 0; k < candidates.size(); k++) {
+         sharedLengths.add(candidates.getSharedTokens(k));
+         if (candidates.getTokens(candidates.getTokenOrder(k), workspace).length == 0) {
+            noTokens++;
+         }
+      }
+      assertTrue(sharedLengths.toString(), sharedLengths.size() > 5);
+      assertEquals(2, noTokens);
+
+      checkScoreAgainst(scorer, names);
+      checkScoreAgainst(Scorer.getGivennameInstance(), names);
+      scorer.setExactWeightedEditDistance(true);
+      try {
+         checkScoreAgainst(scorer, names);
+      }
+      finally {
+         scorer.setExactWeightedEditDistance(false);
+      }
+   }
+
+   private static final String[] NAMES = {
+      "a", "o", "ann", "jon", "allan", "dallan", "quass", "quast", "kwast", "smith", "smyth", "schmidt",
+      "johnson", "roseanne", "mcdonald", "macdonald", "vanderberg", "jonathanson", "casker", "casier", "saleh", "halda",
+      // no weighted edit distance tokens
+      "hhh", "eux"
+   };
+
+   private void checkAtLeast(Scorer scorer, boolean isSurname) throws Exception {
+      FeaturesGenerator featuresGenerator = new FeaturesGenerator(isSurname);
+      Features features = new Features();
+      double[] thresholds = {-2.0, -1.0, -0.75, 0.0, 0.5, 0.7, 1.0, 1.5};
+      for (String name1 : NAMES) {
+         for (String name2 : NAMES) {
+            double score = scorer.scoreNamePair(name1, name2);
+            String pair = name1 + "/" + name2;
+            // the early rejection assumes the levenstein feature is at most minus the difference in lengths
+            featuresGenerator.setFeatures(name1, name2, features);
+            assertTrue(pair, features.levenstein <= -Math.abs(name1.length() - name2.length()));
+            for (double threshold : thresholds) {
+               assertEquals(pair + " " + threshold, score >= threshold ? score : Scorer.BELOW_THRESHOLD,
+                            scorer.scoreNamePairAtLeast(name1, name2, threshold));
+            }
+            // thresholds just below and just above the score
+            assertEquals(pair, score, scorer.scoreNamePairAtLeast(name1, name2, score));
+            assertEquals(pair, score, scorer.scoreNamePairAtLeast(name1, name2, score - 1e-9));
+            // names without tokens score infinity, which nothing is above
+            if (!Double.isInfinite(score)) {
+               assertEquals(pair, Scorer.BELOW_THRESHOLD, scorer.scoreNamePairAtLeast(name1, name2, score + 1e-9));
+               assertEquals(pair, Scorer.BELOW_THRESHOLD, scorer.scoreNamePairAtLeast(name1, name2, Math.nextUp(score)));
+            }
+         }
+      }
+   }
+
+   public void testScoreNamePairAtLeast() throws Exception {
+      checkAtLeast(Scorer.getSurnameInstance(), true);
+      checkAtLeast(Scorer.getGivennameInstance(), false);
+   }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.score;
+
+import junit.framework.TestCase;
+
+public class WeightedEditsTest extends TestCase {
+   public WeightedEditsTest(String name) {
+      super(name);
+   }
+
+   public void testBinaryModelSameAsText() throws Exception {
+      for (String prefix : new String[] {"givenname", "surname"}) {
+         WeightedEdits we = new WeightedEdits();
+         we.load(getClass().getClassLoader().getResourceAsStream(prefix+"WeightedEdits.model"));
+         WeightedEdits binaryWe = new WeightedEdits();
+         long checksum = binaryWe.loadBinary(getClass().getClassLoader().getResourceAsStream(prefix+"WeightedEdits.bin"));
+         assertEquals(prefix, 0, we.difference(binaryWe));
+         // the shipped binary model was converted from the shipped text model
+         assertEquals(prefix, WeightedEdits.getChecksum(getClass().getClassLoader().getResourceAsStream(prefix+"WeightedEdits.model")), checksum);
+         CompiledWeightedEdits edits = we.compile(5);
+         CompiledWeightedEdits binaryEdits = binaryWe.compile(5);
+         int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+         for (int i = 0; i < numTokens; i++) {
+            for (int j = 0; j < numTokens; j++) {
+               assertEquals(prefix, edits.getCost(i, j), binaryEdits.getCost(i, j));
+            }
+         }
+         assertEquals(prefix, 0, WeightedEditDistance.loadWeightedEdits(getClass().getClassLoader(), prefix+"WeightedEdits").difference(we));
+      }
+   }
+
+   public void testStaleBinaryModelIgnored() throws Exception {
+      // pair the surname binary model with the given-name text model, as if the text model had been edited
+      final ClassLoader parent = getClass().getClassLoader();
+      ClassLoader stale = new ClassLoader(parent) {
+         @Override
+         public java.io.InputStream getResourceAsStream(String name) {
+            if (name.equals("staleWeightedEdits.model")) {
+               return parent.getResourceAsStream("givennameWeightedEdits.model");
+            }
+            else if (name.equals("staleWeightedEdits.bin")) {
+               return parent.getResourceAsStream("surnameWeightedEdits.bin");
+            }
+            return null;
+         }
+      };
+      WeightedEdits we = WeightedEditDistance.loadWeightedEdits(stale, "staleWeightedEdits");
+      WeightedEdits givenname = new WeightedEdits();
+      givenname.load(parent.getResourceAsStream("givennameWeightedEdits.model"));
+      WeightedEdits surname = new WeightedEdits();
+      surname.load(parent.getResourceAsStream("surnameWeightedEdits.model"));
+      assertEquals(0, we.difference(givenname));
+      assertTrue(we.difference(surname) > 0);
+   }
+
+   public void testCompiledCosts() throws Exception {
+      WeightedEdits we = new WeightedEdits();
+      we.load(getClass().getClassLoader().getResourceAsStream("surnameWeightedEdits.model"));
+      double smooth = 5;
+      CompiledWeightedEdits edits = we.compile(smooth);
+      assertSame(edits, we.compile(smooth));
+      int numTokens = WeightedEditDistanceTokenizer.NUM_TOKENS;
+      for (int i = 0; i < numTokens; i++) {
+         for (int j = 0; j < numTokens; j++) {
+            assertEquals(we.getCost(i, j), edits.getCost(i, j));
+            assertEquals(edits.getCost(i, j), edits.getCost(j, i));
+         }
+      }
+      // the weighted costs are exactly the costs divided by the positional weights, even past the initial positions
+      CompiledWeightedEdits.PositionWeights weights = edits.getPositionWeights(200);
+      for (int i = 0; i < 200; i++) {
+         assertEquals(37 * 1.0 / (i+smooth), weights.weightedCosts[37][i]);
+      }
+      int[] tokens = {3, 7, WeightedEditDistanceTokenizer.EMPTY_TOKEN - 1};
+      double minCost = 0;
+      for (int i = 0; i < tokens.length; i++) {
+         minCost += (we.getCost(tokens[i], tokens[i]) * 1.0) / (i+smooth);
+      }
+      assertEquals(minCost, edits.getMinCost(tokens));
+
+      we.addCount(3, 7, 1);
+      assertNotSame(edits, we.compile(smooth));
+   }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Choose which of a name's search tokens to search so the estimated number of postings stays under a target
+ * Document frequencies come from the downstream index: call setDocumentFrequency for each token, or readDocumentFrequencies.
+ * Tokens are considered in order of importance: codes first (they're the only way to find rare names), then
+ * the basename and prefixed forms, then similar names, highest-scoring first if the searcher can score them, otherwise
+ * least-frequent first.  Each token is kept if its postings fit in what's left of the target, so a very common
+ * code is dropped in favor of several literal variants that together match fewer records.
+ * Document frequencies can be updated (e.g., by addDocumentFrequency as records are indexed) while other threads plan searches;
+ * each plan reads each token's frequency once.
+ */
+public class ExpansionPlanner {
+   private static Logger logger = Logger.getLogger("org.folg.names.search");
+
+   /**
+    * The tokens chosen for a search
+    */
+   public static class Plan {
+      private final List<String> tokens;
+      private final List<String> droppedTokens;
+      private final long estimatedPostings;
+
+      Plan(List<String> tokens, List<String> droppedTokens, long estimatedPostings) {
+         this.tokens = tokens;
+         this.droppedTokens = droppedTokens;
+         this.estimatedPostings = estimatedPostings;
+      }
+
+      /**
+       * @return tokens to search in addition to the name piece, in order of importance
+       */
+      public List<String> getTokens() {
+         return tokens;
+      }
+
+      /**
+       * @return search tokens left out because they didn't fit in the target
+       */
+      public List<String> getDroppedTokens() {
+         return droppedTokens;
+      }
+
+      /**
+       * @return estimated postings for the name piece and the chosen tokens
+       */
+      public long getEstimatedPostings() {
+         return estimatedPostings;
+      }
+   }
+
+   private final Searcher searcher;
+   private final ConcurrentHashMap<String,AtomicLong> documentFrequencies = new ConcurrentHashMap<String,AtomicLong>();
+   private volatile long defaultDocumentFrequency = 1;
+
+   public ExpansionPlanner(Searcher searcher) {
+      this.searcher = searcher;
+   }
+
+   /**
+    * Set the number of documents containing a token
+    * @param token name or code
+    * @param documentFrequency number of documents
+    */
+   public void setDocumentFrequency(String token, long documentFrequency) {
+      getCounter(token).set(documentFrequency);
+   }
+
+   /**
+    * Add to the number of documents containing a token; e.g., as documents are indexed or deleted
+    * A token without a document frequency starts from 0, not from the default document frequency
+    * @param token name or code
+    * @param delta number of documents added, or negative for documents removed
+    */
+   public void addDocumentFrequency(String token, long delta) {
+      getCounter(token).addAndGet(delta);
+   }
+
+   private AtomicLong getCounter(String token) {
+      AtomicLong counter = documentFrequencies.get(token);
+      if (counter == null) {
+         AtomicLong newCounter = new AtomicLong();
+         counter = documentFrequencies.putIfAbsent(token, newCounter);
+         if (counter == null) {
+            counter = newCounter;
+         }
+      }
+      return counter;
+   }
+
+   /**
+    * Set the number of documents assumed to contain tokens without document frequencies; defaults to 1
+    * @param documentFrequency number of documents
+    */
+   public void setDefaultDocumentFrequency(long documentFrequency) {
+      this.defaultDocumentFrequency = documentFrequency;
+   }
+
+   /**
+    * Read document frequencies; each line is a token, a tab, and the number of documents containing the token
+    * @param reader document frequencies
+    * @throws IOException reading reader
+    */
+   public void readDocumentFrequencies(Reader reader) throws IOException {
+      BufferedReader bufReader = new BufferedReader(reader);
+      String line;
+      while ((line = bufReader.readLine()) != null) {
+         String[] fields = line.split("\t");
+         if (fields.length != 2) {
+            logger.warning("Invalid line: "+line);
+            continue;
+         }
+         try {
+            setDocumentFrequency(fields[0], Long.parseLong(fields[1].trim()));
+         }
+         catch (NumberFormatException e) {
+            logger.warning("Invalid line: "+line);
+         }
+      }
+   }
+
+   public long getDocumentFrequency(String token) {
+      AtomicLong documentFrequency = documentFrequencies.get(token);
+      return (documentFrequency == null ? defaultDocumentFrequency : documentFrequency.get());
+   }
+
+   // codes end in a digit; names are all letters
+   private static boolean isCode(String token) {
+      return token.length() > 0 && Character.isDigit(token.charAt(token.length()-1));
+   }
+
+   // add the scores of the similar names of this name to scores
+   private void addScores(String namePiece, Map<String,Double> scores) {
+      for (ScoredName scoredName : searcher.getScoredSimilarNames(namePiece)) {
+         Double score = scores.get(scoredName.getName());
+         if (score == null || score < scoredName.getScore()) {
+            scores.put(scoredName.getName(), scoredName.getScore());
+         }
+      }
+   }
+
+   /**
+    * Choose the tokens to search for a name piece
+    * The name piece itself is always searched, even if its postings exceed the target
+    * @param namePiece normalized name piece
+    * @param maxPostings target number of postings
+    * @return plan
+    */
+   public Plan plan(String namePiece, long maxPostings) {
+      Collection<String> candidates = searcher.getAdditionalSearchTokens(namePiece);
+      List<String> codes = new ArrayList<String>();
+      List<String> basenames = new ArrayList<String>();
+      List<String> names = new ArrayList<String>();
+      Set<String> prefixedForms = new HashSet<String>();
+      String basename = searcher.getBasename(namePiece);
+      if (basename != null) {
+         prefixedForms.add(basename);
+      }
+      else {
+         Collection<String> prefixedNames = searcher.getPrefixedNames(namePiece);
+         if (prefixedNames != null) {
+            prefixedForms.addAll(prefixedNames);
+         }
+      }
+      for (String token : candidates) {
+         if (isCode(token)) {
+            codes.add(token);
+         }
+         else if (prefixedForms.contains(token)) {
+            basenames.add(token);
+         }
+         else {
+            names.add(token);
+         }
+      }
+
+      // read each frequency once, so concurrent updates can't change it during the sort or between the sort and the sum
+      final Map<String,Long> frequencies = new HashMap<String,Long>();
+      for (String token : candidates) {
+         frequencies.put(token, getDocumentFrequency(token));
+      }
+
+      // cheapest first within each group unless we can rank the similar names by score
+      Comparator<String> byFrequency = new Comparator<String>() {
+         public int compare(String token1, String token2) {
+            long df1 = frequencies.get(token1);
+            long df2 = frequencies.get(token2);
+            return (df1 < df2 ? -1 : df1 > df2 ? 1 : token1.compareTo(token2));
+         }
+      };
+      Collections.sort(codes, byFrequency);
+      Collections.sort(basenames, byFrequency);
+      Collections.sort(names, byFrequency);
+      // without a scorer or precomputed scores, similar names stay in frequency order
+      if (searcher.canScoreSimilarNames(namePiece) && (basename == null || searcher.canScoreSimilarNames(basename))) {
+         final Map<String,Double> scores = new HashMap<String,Double>();
+         addScores(namePiece, scores);
+         if (basename != null) {
+            addScores(basename, scores);
+         }
+         // stable sort keeps unscored names (e.g., the basename's code names) in frequency order at the end
+         Collections.sort(names, new Comparator<String>() {
+            public int compare(String token1, String token2) {
+               Double score1 = scores.get(token1);
+               Double score2 = scores.get(token2);
+               if (score1 == null || score2 == null) {
+                  return (score1 == null ? (score2 == null ? 0 : 1) : -1);
+               }
+               return score2.compareTo(score1);
+            }
+         });
+      }
+
+      List<String> tokens = new ArrayList<String>();
+      List<String> droppedTokens = new ArrayList<String>();
+      long postings = getDocumentFrequency(namePiece);
+      for (List<String> group : Arrays.asList(codes, basenames, names)) {
+         for (String token : group) {
+            long df = frequencies.get(token);
+            if (postings + df <= maxPostings) {
+               tokens.add(token);
+               postings += df;
+            }
+            else {
+               droppedTokens.add(token);
+            }
+         }
+      }
+      return new Plan(tokens, droppedTokens, postings);
+   }
+}
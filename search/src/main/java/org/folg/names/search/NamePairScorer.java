@@ -0,0 +1,32 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+/**
+ * Scores how similar two name pieces are
+ * The search module doesn't depend upon the score module, so Scorer implements this interface
+ * and can be passed to Searcher.setNamePairScorer
+ */
+public interface NamePairScorer {
+   /**
+    * Score two name pieces to see how close they are.
+    * @param namePiece1 normalized name piece
+    * @param namePiece2 another normalized name piece
+    * @return score, higher value indicates more-similar names
+    */
+   public double scoreNamePair(String namePiece1, String namePiece2);
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact trie over a dictionary of lower-case names, used to find the names matching a wildcard pattern
+ * Nodes are stored in parallel arrays, children are linked in alphabetical order, and node 0 is the root
+ */
+class NameTrie {
+   public static final char ANY_CHAR = '?';
+   public static final char ANY_CHARS = '*';
+   // pattern positions are tracked as bits in a long
+   public static final int MAX_PATTERN_LENGTH = 63;
+
+   private final char[] labels;
+   private final int[] firstChild;
+   private final int[] nextSibling;
+   private final boolean[] isName;
+
+   /**
+    * Build a trie
+    * @param sortedNames names in sorted order; duplicates are ignored
+    */
+   NameTrie(List<String> sortedNames) {
+      // count nodes: each name adds one node per character after the prefix it shares with the previous name
+      int numNodes = 1;
+      String prevName = "";
+      for (String name : sortedNames) {
+         numNodes += name.length() - getCommonPrefixLength(prevName, name);
+         prevName = name;
+      }
+
+      labels = new char[numNodes];
+      firstChild = new int[numNodes];
+      nextSibling = new int[numNodes];
+      isName = new boolean[numNodes];
+      int[] lastChild = new int[numNodes];
+      // path[depth] is the node for the first depth characters of the previous name
+      int[] path = new int[getMaxLength(sortedNames)+1];
+
+      int node = 1;
+      prevName = "";
+      for (String name : sortedNames) {
+         int depth = getCommonPrefixLength(prevName, name);
+         for (; depth < name.length(); depth++) {
+            int parent = path[depth];
+            labels[node] = name.charAt(depth);
+            if (firstChild[parent] == 0) {
+               firstChild[parent] = node;
+            }
+            else {
+               nextSibling[lastChild[parent]] = node;
+            }
+            lastChild[parent] = node;
+            path[depth+1] = node;
+            node++;
+         }
+         isName[path[name.length()]] = true;
+         prevName = name;
+      }
+   }
+
+   private static int getCommonPrefixLength(String s1, String s2) {
+      int len = Math.min(s1.length(), s2.length());
+      int i = 0;
+      while (i < len && s1.charAt(i) == s2.charAt(i)) {
+         i++;
+      }
+      return i;
+   }
+
+   private static int getMaxLength(List<String> names) {
+      int maxLength = 0;
+      for (String name : names) {
+         maxLength = Math.max(maxLength, name.length());
+      }
+      return maxLength;
+   }
+
+   int size() {
+      return labels.length;
+   }
+
+   /**
+    * Return the names matching the pattern, in sorted order
+    * Only the parts of the trie that can still lead to a match are visited, so a pattern that starts with letters
+    * takes time proportional to the names under that prefix rather than the size of the dictionary
+    * @param pattern lower-case letters, ? to match any one letter, and * to match any number of letters
+    * @param maxNames return at most this many names
+    * @return matching names
+    */
+   List<String> match(String pattern, int maxNames) {
+      if (pattern.length() > MAX_PATTERN_LENGTH) {
+         throw new IllegalArgumentException("Pattern too long: "+pattern);
+      }
+      // bit i of a state is set when the first i characters of the pattern have been matched
+      // letterMasks[c] has bit i set when pattern character i matches letter c
+      long[] letterMasks = new long[26];
+      long starMask = 0;
+      for (int i = 0; i < pattern.length(); i++) {
+         char c = pattern.charAt(i);
+         if (c == ANY_CHARS) {
+            starMask |= 1L << i;
+         }
+         else if (c == ANY_CHAR) {
+            for (int letter = 0; letter < letterMasks.length; letter++) {
+               letterMasks[letter] |= 1L << i;
+            }
+         }
+         else if (c >= 'a' && c <= 'z') {
+            letterMasks[c - 'a'] |= 1L << i;
+         }
+         else {
+            throw new IllegalArgumentException("Invalid pattern: "+pattern);
+         }
+      }
+      long acceptMask = 1L << pattern.length();
+
+      List<String> names = new ArrayList<String>();
+      if (maxNames > 0) {
+         match(firstChild[0], skipStars(1L, starMask), letterMasks, starMask, acceptMask, new StringBuilder(), names, maxNames);
+      }
+      return names;
+   }
+
+   // a * can match nothing, so a position before a * also counts as being after it
+   private static long skipStars(long state, long starMask) {
+      long prevState;
+      do {
+         prevState = state;
+         state |= (state & starMask) << 1;
+      } while (state != prevState);
+      return state;
+   }
+
+   private void match(int node, long state, long[] letterMasks, long starMask, long acceptMask,
+                      StringBuilder buf, List<String> names, int maxNames) {
+      for (; node != 0 && names.size() < maxNames; node = nextSibling[node]) {
+         int letter = labels[node] - 'a';
+         long nextState = (letter >= 0 && letter < letterMasks.length ? (state & letterMasks[letter]) << 1 : 0) |
+                          (state & starMask);
+         if (nextState != 0) {
+            nextState = skipStars(nextState, starMask);
+            buf.append(labels[node]);
+            if (isName[node] && (nextState & acceptMask) != 0) {
+               names.add(buf.toString());
+            }
+            if (firstChild[node] != 0) {
+               match(firstChild[node], nextState, letterMasks, starMask, acceptMask, buf, names, maxNames);
+            }
+            buf.setLength(buf.length()-1);
+         }
+      }
+   }
+}
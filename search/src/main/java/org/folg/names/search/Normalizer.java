@@ -163,6 +163,9 @@ public class Normalizer {
          else if (c >= 'a' && c <= 'z') {
             buf.append(c);
          }
+         else if (allowWildcards && (c == '*' || c == '?')) {
+            buf.append(c);
+         }
          else if (Character.isLetter(c)) {
             // ignore letters > U+0250; they're generally from scripts that don't map well to roman letters
             // ignore 186,170: superscript o and a used in spanish numbers: 1^a and 2^o
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+import java.util.List;
+
+/**
+ * A trie over a list of lower-case prefixes that finds the first prefix in list order that a name starts with
+ * in a single left-to-right scan of the name
+ */
+class PrefixTrie {
+   private static final int ALPHABET_SIZE = 26;
+   private static final int NOT_A_PREFIX = Integer.MAX_VALUE;
+
+   // children[node*ALPHABET_SIZE + letter] is the child node, or 0 if none; node 0 is the root
+   private int[] children;
+   // position in the prefix list of the prefix ending at each node, or NOT_A_PREFIX
+   private int[] order;
+   private int numNodes;
+
+   PrefixTrie(List<String> prefixes) {
+      children = new int[ALPHABET_SIZE];
+      order = new int[] {NOT_A_PREFIX};
+      numNodes = 1;
+      for (int i = 0; i < prefixes.size(); i++) {
+         String prefix = prefixes.get(i);
+         int node = 0;
+         for (int j = 0; j < prefix.length(); j++) {
+            int letter = prefix.charAt(j) - 'a';
+            if (letter < 0 || letter >= ALPHABET_SIZE) {
+               throw new IllegalArgumentException("Prefixes must be lower-case letters: "+prefix);
+            }
+            int child = children[node*ALPHABET_SIZE + letter];
+            if (child == 0) {
+               child = addNode();
+               children[node*ALPHABET_SIZE + letter] = child;
+            }
+            node = child;
+         }
+         // if a prefix is listed twice, the first one wins
+         if (order[node] == NOT_A_PREFIX) {
+            order[node] = i;
+         }
+      }
+   }
+
+   private int addNode() {
+      if (numNodes == order.length) {
+         int[] newOrder = new int[numNodes * 2];
+         System.arraycopy(order, 0, newOrder, 0, numNodes);
+         order = newOrder;
+         int[] newChildren = new int[numNodes * 2 * ALPHABET_SIZE];
+         System.arraycopy(children, 0, newChildren, 0, children.length);
+         children = newChildren;
+      }
+      order[numNodes] = NOT_A_PREFIX;
+      return numNodes++;
+   }
+
+   /**
+    * Return the length of the prefix that comes first in the prefix list among those that the name starts with
+    * and that leave at least minRemaining characters
+    * @param name name to match
+    * @param minRemaining minimum number of characters that must follow the prefix
+    * @return prefix length, or -1 if no prefix matches
+    */
+   int match(String name, int minRemaining) {
+      int bestOrder = NOT_A_PREFIX;
+      int bestLength = -1;
+      int node = 0;
+      int maxLength = name.length() - minRemaining;
+      for (int i = 0; i < maxLength; i++) {
+         int letter = name.charAt(i) - 'a';
+         if (letter < 0 || letter >= ALPHABET_SIZE) {
+            break;
+         }
+         node = children[node*ALPHABET_SIZE + letter];
+         if (node == 0) {
+            break;
+         }
+         if (order[node] < bestOrder) {
+            bestOrder = order[node];
+            bestLength = i+1;
+         }
+      }
+      return bestLength;
+   }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+/**
+ * A similar name and its score; sorts highest score first
+ */
+public class ScoredName implements Comparable<ScoredName> {
+   private final String name;
+   private final double score;
+
+   public ScoredName(String name, double score) {
+      this.name = name;
+      this.score = score;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public double getScore() {
+      return score;
+   }
+
+   public int compareTo(ScoredName that) {
+      if (this.score < that.score) {
+         return 1;
+      }
+      else if (this.score > that.score) {
+         return -1;
+      }
+      else {
+         return this.name.compareTo(that.name);
+      }
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (!(o instanceof ScoredName)) {
+         return false;
+      }
+      ScoredName that = (ScoredName)o;
+      return this.name.equals(that.name) && this.score == that.score;
+   }
+
+   @Override
+   public int hashCode() {
+      return name.hashCode();
+   }
+
+   @Override
+   public String toString() {
+      return name+":"+score;
+   }
+}
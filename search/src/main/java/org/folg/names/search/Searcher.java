@@ -29,6 +29,7 @@ import javax.sql.DataSource;
 import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 
 /**
@@ -37,6 +38,23 @@ import java.util.logging.Logger;
  */
 public class Searcher {
    private static Logger logger = Logger.getLogger("org.folg.names.search");
+   private static final int SCORED_NAMES_CACHE_SIZE = 10000;
+   private static final int GENERATED_NAMES_CACHE_SIZE = 10000;
+   // generation requests beyond this many waiting fall back to the code map right away
+   private static final int GENERATOR_QUEUE_SIZE = 100;
+   // similar names may be followed by a precomputed score; e.g., "dallan","allan:1.5276 dalan:2.0143"
+   private static final char SCORE_SEPARATOR = ':';
+   // index-time expansion indexes common names under their code with this prefix; see getCommonCodeToken
+   private static final String COMMON_CODE_PREFIX = "0";
+
+   /**
+    * Where the variant fan-out happens
+    * SEARCH_TIME (default): names are indexed under themselves plus their code when rare, and searches include all similar names
+    * INDEX_TIME: names are also indexed under every name that lists them as similar, so searches need just the name and its code
+    * (prefixed forms of a surname basename are still added at search time, so they also bring in the names similar to them)
+    */
+   public enum ExpansionMode { SEARCH_TIME, INDEX_TIME }
+
    private static final Searcher surnameStandardizer = new Searcher(true);
    private static final Searcher givennameStandardizer = new Searcher(false);
    public static Searcher getGivennameInstance() {
@@ -79,6 +97,25 @@ public class Searcher {
       }
    }
 
+   private static ThreadPoolExecutor staticGeneratorExecutor = null;
+   private static synchronized ExecutorService getGeneratorExecutor() {
+      // given and surname Searchers share the same threads
+      if (staticGeneratorExecutor == null) {
+         int threads = Runtime.getRuntime().availableProcessors();
+         staticGeneratorExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                          new ArrayBlockingQueue<Runnable>(GENERATOR_QUEUE_SIZE),
+                                                          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "similar-name-generator");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         staticGeneratorExecutor.allowCoreThreadTimeOut(true);
+      }
+      return staticGeneratorExecutor;
+   }
+
    private static MemcachedClient staticMC = null;
    private static synchronized MemcachedClient getMemcachedClient(String memcacheAddresses) {
       // assume memcacheAddresses parameter always has the same value
@@ -98,19 +135,79 @@ public class Searcher {
    private Map<String,String[]> codeMap = null;
    private Set<String> commonNames = null;
    private Map<String,String[]> similarNames = null;
+   private Map<String,float[]> similarNameScores = null;
+   // the mode can be switched while other threads use the searcher; see setExpansionMode
+   private volatile Map<String,String[]> reverseSimilarNames = null;
+   private volatile ExpansionMode expansionMode = ExpansionMode.SEARCH_TIME;
+   private NamePairScorer namePairScorer = null;
+   private final Map<String,ScoredName[]> scoredNamesCache;
+   private volatile VariantGenerator variantGenerator = null;
+   private long variantGeneratorTimeoutMillis = 0;
+   private final Map<String,String[]> generatedNamesCache;
+   private final ConcurrentMap<String,Future<String[]>> pendingGenerations = new ConcurrentHashMap<String,Future<String[]>>();
+   private volatile NameTrie nameTrie = null;
    private final StringEncoder coder;
    private Map<String,String> prefixed2base = null;
    private Map<String,List<String>> base2prefixed = null;
-   private final List<String> surnameProbablePrefixes;
-   private final Set<String> surnameProbablePrefixesStart;
+   private final PrefixTrie surnameProbablePrefixes;
    private DataSource dataSource = null;
    private MemcachedClient memcachedClient = null;
    private String memcacheKeyPrefix = null;
    private int memcacheExpiration = 0;
 
+   /**
+    * Create a new searcher that reads the specified tables instead of the default ones
+    * You would not normally call this function.  Used to compare different versions of the tables
+    * @param isSurname true for surnames
+    * @param similarNamesReader similar names to use
+    * @param codeMapReader code map to use
+    * @return new searcher; surname searchers read the default basenames
+    * @throws IOException reading the tables
+    */
+   public static Searcher newInstance(boolean isSurname, Reader similarNamesReader, Reader codeMapReader) throws IOException {
+      return newInstance(isSurname, similarNamesReader, codeMapReader, null);
+   }
+
+   /**
+    * Create a new searcher that reads the specified tables instead of the default ones
+    * You would not normally call this function.  Used to compare different versions of the tables
+    * @param isSurname true for surnames
+    * @param similarNamesReader similar names to use
+    * @param codeMapReader code map to use
+    * @param basenamesReader basenames (prefixed surnames) to use for surnames; null to read the default basenames
+    * @return new searcher
+    * @throws IOException reading the tables
+    */
+   public static Searcher newInstance(boolean isSurname, Reader similarNamesReader, Reader codeMapReader,
+                                      Reader basenamesReader) throws IOException {
+      Searcher searcher = new Searcher(isSurname, false);
+      searcher.readSimilarNames(similarNamesReader);
+      searcher.readCodeMap(codeMapReader);
+      if (isSurname && basenamesReader != null) {
+         searcher.readBasenames(basenamesReader);
+      }
+      return searcher;
+   }
+
    private Searcher(final boolean isSurname) {
+      this(isSurname, true);
+   }
+
+   private Searcher(final boolean isSurname, final boolean readTables) {
       this.normalizer = Normalizer.getInstance();
       this.isSurname = isSurname;
+      this.scoredNamesCache = Collections.synchronizedMap(new LinkedHashMap<String,ScoredName[]>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String,ScoredName[]> eldest) {
+            return size() > SCORED_NAMES_CACHE_SIZE;
+         }
+      });
+      this.generatedNamesCache = Collections.synchronizedMap(new LinkedHashMap<String,String[]>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String,String[]> eldest) {
+            return size() > GENERATED_NAMES_CACHE_SIZE;
+         }
+      });
       String prefix = isSurname ? "surname" : "givenname";
 
       Reader similarNamesReader = null;
@@ -121,21 +218,17 @@ public class Searcher {
          Properties props = new Properties();
          props.load(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("searcher.properties"), "UTF8"));
          if (isSurname) {
-            surnameProbablePrefixes = Arrays.asList(props.getProperty("surnameProbablePrefixList").split(","));
-            surnameProbablePrefixesStart = new HashSet<String>(); // let's optimize the probable prefixes lookup just a bit
-            for (String probablePrefix : surnameProbablePrefixes) {
-               surnameProbablePrefixesStart.add(probablePrefix.substring(0,2));
-            }
+            // the trie keeps the list order, so a prefix listed earlier wins over a longer one listed later
+            surnameProbablePrefixes = new PrefixTrie(Arrays.asList(props.getProperty("surnameProbablePrefixList").split(",")));
          }
          else {
             surnameProbablePrefixes = null;
-            surnameProbablePrefixesStart = null;
          }
 
          coder = new Soundex();
 
          //Properties props = new Properties();
-         InputStream propStream = getClass().getClassLoader().getResourceAsStream("db_memcache.properties");
+         InputStream propStream = readTables ? getClass().getClassLoader().getResourceAsStream("db_memcache.properties") : null;
          if (propStream != null) {
             props = new Properties();
             props.load(new InputStreamReader(propStream, "UTF8"));
@@ -159,12 +252,14 @@ public class Searcher {
          }
 
          // if not reading from database, read from file
-         if (dataSource == null) {
+         if (dataSource == null && readTables) {
             similarNamesReader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream(prefix + "_similar_names.csv"), "UTF8");
             readSimilarNames(similarNamesReader);
          }
 
-         codeMapReader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream(prefix + "SoundexMap.txt"));
+         if (readTables) {
+            codeMapReader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream(prefix + "SoundexMap.txt"));
+         }
          if (codeMapReader != null) {
             // call after readSimilarNames (if we're reading the whole file into memory)
             readCodeMap(codeMapReader); // also populates commonNames
@@ -197,8 +292,30 @@ public class Searcher {
       }
    }
 
+   /**
+    * Return the similar name in a token of the similar names file, without any score
+    * @param token similar name, possibly followed by a colon and its score; e.g., allan:1.5276
+    * @return similar name
+    */
+   public static String getTokenName(String token) {
+      int pos = token.indexOf(SCORE_SEPARATOR);
+      return (pos < 0 ? token : token.substring(0, pos));
+   }
+
+   /**
+    * Return the score in a token of the similar names file
+    * @param token similar name, possibly followed by a colon and its score; e.g., allan:1.5276
+    * @return score following the similar name, or NaN if it doesn't have one
+    */
+   public static float getTokenScore(String token) {
+      int pos = token.indexOf(SCORE_SEPARATOR);
+      return (pos < 0 ? Float.NaN : Float.parseFloat(token.substring(pos+1)));
+   }
+
    /**
     * Read the similar names file
+    * Each similar name may be followed by a colon and its precomputed score, which getScoredSimilarNames uses instead of
+    * computing the score; SimilarNameWeighter in the eval module generates these scores
     * You would not normally call this function.  Used in testing and evaluation
     * @param reader containing similar names to use
     * @throws IOException reading reader
@@ -206,6 +323,7 @@ public class Searcher {
    public void readSimilarNames(Reader reader) throws IOException {
       BufferedReader bufReader = new BufferedReader(reader);
       similarNames = new HashMap<String, String[]>();
+      similarNameScores = new HashMap<String, float[]>();
       String line;
       String[] empty = new String[0];
       while ((line = bufReader.readLine()) != null) {
@@ -215,15 +333,82 @@ public class Searcher {
          String name = fields[0].substring(1, fields[0].length()-1).intern();
          if (fields.length == 2 && fields[1].length() > 2) {
             String[] names = fields[1].substring(1, fields[1].length()-1).split(" ");
+            float[] scores = null;
             for (int i = 0; i < names.length; i++) {
-               names[i] = names[i].intern();
+               float score = getTokenScore(names[i]);
+               if (!Float.isNaN(score)) {
+                  if (scores == null) {
+                     scores = new float[names.length];
+                     Arrays.fill(scores, Float.NaN);
+                  }
+                  scores[i] = score;
+               }
+               names[i] = getTokenName(names[i]).intern();
             }
             similarNames.put(name, names);
+            if (scores != null) {
+               similarNameScores.put(name, scores);
+            }
          }
          else {
             similarNames.put(name, empty);
          }
       }
+      synchronized (this) {
+         if (expansionMode == ExpansionMode.INDEX_TIME) {
+            readReverseSimilarNames();
+         }
+      }
+      scoredNamesCache.clear();
+      nameTrie = null;
+   }
+
+   // map each name to the names that list it as a similar name
+   private void readReverseSimilarNames() {
+      Map<String,List<String>> reverseLists = new HashMap<String, List<String>>();
+      for (Map.Entry<String,String[]> entry : similarNames.entrySet()) {
+         for (String similarName : entry.getValue()) {
+            List<String> names = reverseLists.get(similarName);
+            if (names == null) {
+               names = new ArrayList<String>();
+               reverseLists.put(similarName, names);
+            }
+            names.add(entry.getKey());
+         }
+      }
+      Map<String,String[]> reverseNames = new HashMap<String, String[]>();
+      for (Map.Entry<String,List<String>> entry : reverseLists.entrySet()) {
+         List<String> names = entry.getValue();
+         reverseNames.put(entry.getKey(), names.toArray(new String[names.size()]));
+      }
+      reverseSimilarNames = reverseNames;
+   }
+
+   /**
+    * Set where the variant fan-out happens
+    * Switching modes changes the index tokens, so the index must be rebuilt when the mode changes.
+    * The searchers are shared, so the mode may be switched while other threads use them; calls in progress
+    * return the tokens for either the old or the new mode
+    * @param expansionMode SEARCH_TIME or INDEX_TIME
+    * @throws IllegalStateException if INDEX_TIME is requested but similar names are being read from a database
+    */
+   public synchronized void setExpansionMode(ExpansionMode expansionMode) {
+      if (expansionMode == ExpansionMode.INDEX_TIME) {
+         if (similarNames == null) {
+            throw new IllegalStateException("Index-time expansion requires the similar names file to be read into memory");
+         }
+         // set the reverse names first, so threads that see the new mode see them too
+         readReverseSimilarNames();
+         this.expansionMode = expansionMode;
+      }
+      else {
+         this.expansionMode = expansionMode;
+         reverseSimilarNames = null;
+      }
+   }
+
+   public ExpansionMode getExpansionMode() {
+      return expansionMode;
    }
 
    /**
@@ -252,6 +437,7 @@ public class Searcher {
          }
          codeMap.put(code,names);
       }
+      nameTrie = null;
    }
 
    /**
@@ -291,6 +477,7 @@ public class Searcher {
             }
          }
       }
+      nameTrie = null;
    }
 
    private String[] readSimilarNamesFromDb(String namePiece) {
@@ -325,30 +512,50 @@ public class Searcher {
 
    // Returns the base of this surname if it starts with a probable prefix
    private String getProbableBase(String name) {
-      if (name.length() >= 4 && surnameProbablePrefixesStart.contains(name.substring(0,2))) {
-         for (String probablePrefix : surnameProbablePrefixes) {
-            if (name.startsWith(probablePrefix) && name.length() - probablePrefix.length() >= 2) {
-               return name.substring(probablePrefix.length());
-            }
+      if (name.length() >= 4) {
+         int prefixLength = surnameProbablePrefixes.match(name, 2);
+         if (prefixLength > 0) {
+            return name.substring(prefixLength);
          }
       }
       return null;
    }
 
+   // index-time expansion indexes common names under their code prefixed by a digit, so that searches for names
+   // without similar names can still reach the common names sharing their code.  Names have no digits and codes
+   // start with a letter, so the token can't collide with either, even after the search engine folds case
+   private String getCommonCodeToken(String namePiece) {
+      return COMMON_CODE_PREFIX + getCode(namePiece);
+   }
+
    /**
     * Get additional tokens to index
     * @param namePiece normalized name piece
     * @return tokens to index in addition to the namePiece
     */
    public Collection<String> getAdditionalIndexTokens(String namePiece) {
-      Collection<String> indexTokens;
+      boolean isCommon = commonNames.contains(namePiece);
+      ExpansionMode mode = expansionMode;
+      if (isCommon && mode == ExpansionMode.SEARCH_TIME) {
+         return Collections.emptySet();
+      }
 
-      if (commonNames.contains(namePiece)) {
-         indexTokens = Collections.emptySet();
+      Collection<String> indexTokens = new HashSet<String>();
+      if (mode == ExpansionMode.INDEX_TIME) {
+         // index also under every name that lists this name as similar
+         // (read after the mode; it's null if the mode was just switched back)
+         Map<String,String[]> reverseNamesMap = reverseSimilarNames;
+         String[] reverseNames = (reverseNamesMap == null ? null : reverseNamesMap.get(namePiece));
+         if (reverseNames != null) {
+            Collections.addAll(indexTokens, reverseNames);
+         }
+         if (isCommon) {
+            indexTokens.add(getCommonCodeToken(namePiece));
+         }
       }
-      else {
+
+      if (!isCommon) {
          // if rare, index also under code
-         indexTokens = new HashSet<String>();
          try {
             indexTokens.add(coder.encode(namePiece));
          } catch (EncoderException e) {
@@ -383,6 +590,28 @@ public class Searcher {
       return commonNames.contains(namePiece);
    }
 
+   /**
+    * Return the common names; i.e., the names in the code map
+    * @return unmodifiable set of common names
+    */
+   public Set<String> getCommonNames() {
+      return Collections.unmodifiableSet(commonNames);
+   }
+
+   /**
+    * Return the similar names table, if it was read into memory
+    * @return unmodifiable map from each name in the table to its similar names (without scores),
+    * or null if the similar names are read from a database
+    */
+   public Map<String,String[]> getSimilarNamesMap() {
+      return (similarNames == null ? null : Collections.unmodifiableMap(similarNames));
+   }
+
+   // common names for each code
+   Map<String,String[]> getCodeMap() {
+      return codeMap;
+   }
+
    public String getCode(String namePiece) {
       try {
          return coder.encode(namePiece);
@@ -392,9 +621,82 @@ public class Searcher {
       return "";
    }
 
-   private void addSimilarNames(String namePiece, Collection<String> tokens) {
+   /**
+    * Generate similar names for names that aren't in the similar names table instead of using the names sharing their code
+    * Generation runs on a shared pool of background threads.  If the similar names aren't generated within the time budget,
+    * the names sharing the code are returned as before; the generation continues in the background and its result
+    * is cached for later searches
+    * Pass new SimilarNameGenerator(isSurname, true) from the score module
+    * @param variantGenerator generator, or null to stop generating similar names
+    * @param timeoutMillis time budget for generating the similar names for a name during a call
+    */
+   public void setVariantGenerator(VariantGenerator variantGenerator, long timeoutMillis) {
+      this.variantGeneratorTimeoutMillis = timeoutMillis;
+      this.variantGenerator = variantGenerator;
+      generatedNamesCache.clear();
+      scoredNamesCache.clear();
+   }
+
+   // return the similar names generated by generator, or null if they couldn't be generated within the time budget;
+   // the caller reads the variantGenerator field once and passes it in, since setVariantGenerator can clear it at any time
+   private String[] getGeneratedNames(final String namePiece, final VariantGenerator generator) {
+      String[] names = generatedNamesCache.get(namePiece);
+      if (names != null) {
+         return names;
+      }
+
+      // share a generation already in progress for this name
+      Future<String[]> future = pendingGenerations.get(namePiece);
+      if (future == null) {
+         FutureTask<String[]> task = new FutureTask<String[]>(new Callable<String[]>() {
+            public String[] call() {
+               try {
+                  String[] generatedNames = generator.generateSimilarNames(namePiece);
+                  if (generator == variantGenerator) {
+                     generatedNamesCache.put(namePiece, generatedNames);
+                  }
+                  return generatedNames;
+               }
+               finally {
+                  pendingGenerations.remove(namePiece);
+               }
+            }
+         });
+         future = pendingGenerations.putIfAbsent(namePiece, task);
+         if (future == null) {
+            future = task;
+            try {
+               getGeneratorExecutor().execute(task);
+            }
+            catch (RejectedExecutionException e) {
+               // too many generations waiting; don't fall further behind
+               pendingGenerations.remove(namePiece);
+               return null;
+            }
+         }
+      }
+
+      try {
+         return future.get(variantGeneratorTimeoutMillis, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e) {
+         return null;
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return null;
+      }
+      catch (ExecutionException e) {
+         logger.warning("Error generating similar names for "+namePiece+": "+e.getCause());
+         return null;
+      }
+   }
+
+   // return the similar names, which may be followed by scores if they were read from a database
+   private String[] getSimilarNameTokens(String namePiece) {
       String[] names = null;
       boolean memcacheLookupFailed = false;
+      boolean generationIncomplete = false;
 
       // if we read similar names from a file, look up there first
       if (similarNames != null) {
@@ -415,6 +717,13 @@ public class Searcher {
          }
       }
 
+      // generate similar names if we can do it in time
+      VariantGenerator generator = variantGenerator;
+      if (names == null && generator != null) {
+         names = getGeneratedNames(namePiece, generator);
+         generationIncomplete = (names == null);
+      }
+
       // if all else fails, get similar names from soundex code map
       if (names == null) {
          try {
@@ -427,11 +736,18 @@ public class Searcher {
          }
       }
 
-      if (memcacheLookupFailed) {
+      // don't cache the names for the code if the generated names will be available later
+      if (memcacheLookupFailed && !generationIncomplete) {
          memcachedClient.set(memcacheKeyPrefix+namePiece, memcacheExpiration, names);
       }
 
-      Collections.addAll(tokens, names);
+      return names;
+   }
+
+   private void addSimilarNames(String namePiece, Collection<String> tokens) {
+      for (String token : getSimilarNameTokens(namePiece)) {
+         tokens.add(getTokenName(token));
+      }
    }
 
    /**
@@ -447,6 +763,10 @@ public class Searcher {
    }
 
    private void addSearchTokens(String namePiece, Collection<String> tokens, boolean includeName, boolean includeCode) {
+      addSearchTokens(namePiece, tokens, includeName, includeCode, true);
+   }
+
+   private void addSearchTokens(String namePiece, Collection<String> tokens, boolean includeName, boolean includeCode, boolean includeSimilarNames) {
       // include exact name and code
       if (includeName) {
          tokens.add(namePiece);
@@ -459,8 +779,20 @@ public class Searcher {
          }
       }
 
-      // include similar names (and codes)
-      addSimilarNames(namePiece, tokens);
+      if (!includeSimilarNames) {
+         // caller adds them
+      }
+      else if (expansionMode == ExpansionMode.INDEX_TIME) {
+         // similar names are indexed under this name already; names without similar names fall back to
+         // the common names sharing their code, which are indexed under the common code token
+         if (!similarNames.containsKey(namePiece)) {
+            tokens.add(getCommonCodeToken(namePiece));
+         }
+      }
+      else {
+         // include similar names (and codes)
+         addSimilarNames(namePiece, tokens);
+      }
    }
 
    public String getBasename(String namePiece) {
@@ -481,6 +813,17 @@ public class Searcher {
       return null;
    }
 
+   /**
+    * Return the prefixed surnames read from the basenames file; e.g., mcwilliams
+    * @return unmodifiable set of prefixed surnames, empty for given names
+    */
+   public Set<String> getPrefixedSurnames() {
+      if (prefixed2base != null) {
+         return Collections.unmodifiableSet(prefixed2base.keySet());
+      }
+      return Collections.emptySet();
+   }
+
    /**
     * Get additional tokens to search
     * @param namePiece normalized name piece
@@ -515,4 +858,181 @@ public class Searcher {
       tokens.remove(namePiece); // just in case the namePiece was added
       return tokens;
    }
+
+   /**
+    * Set the scorer used to rank similar names
+    * Pass Scorer.getGivennameInstance() or Scorer.getSurnameInstance() from the score module
+    * @param namePairScorer scorer
+    */
+   public void setNamePairScorer(NamePairScorer namePairScorer) {
+      this.namePairScorer = namePairScorer;
+      scoredNamesCache.clear();
+   }
+
+   /**
+    * Return the similar names for a name piece along with their scores, highest score first
+    * Uses the precomputed scores in the similar names table if it has them; otherwise the scores are computed
+    * when first requested.  Either way the result is cached
+    * @param namePiece normalized name piece
+    * @return scored similar names
+    * @throws IllegalStateException if a score needs to be computed and no scorer has been set; see canScoreSimilarNames
+    */
+   public ScoredName[] getScoredSimilarNames(String namePiece) {
+      ScoredName[] scoredNames = scoreSimilarNames(namePiece);
+      if (scoredNames == null) {
+         throw new IllegalStateException("Call setNamePairScorer before ranking similar names without precomputed scores");
+      }
+      return scoredNames;
+   }
+
+   /**
+    * Return true if getScoredSimilarNames can score the similar names of a name piece; that is, if a scorer has been set
+    * or the similar names table has precomputed scores for all of them
+    * @param namePiece normalized name piece
+    * @return true if the similar names can be scored
+    */
+   public boolean canScoreSimilarNames(String namePiece) {
+      return (scoreSimilarNames(namePiece) != null);
+   }
+
+   // return the scored similar names, or null if a score needs to be computed and no scorer has been set
+   private ScoredName[] scoreSimilarNames(String namePiece) {
+      ScoredName[] scoredNames = scoredNamesCache.get(namePiece);
+      if (scoredNames == null) {
+         NamePairScorer scorer = namePairScorer;
+         String[] tokens = getSimilarNameTokens(namePiece);
+         // precomputed scores line up with the table entry, but not with the names for the code
+         float[] scores = (similarNames != null && similarNames.get(namePiece) == tokens ? similarNameScores.get(namePiece) : null);
+         List<ScoredName> scoredNameList = new ArrayList<ScoredName>(tokens.length);
+         Set<String> seenNames = new HashSet<String>();
+         for (int i = 0; i < tokens.length; i++) {
+            String name = getTokenName(tokens[i]);
+            if (name.equals(namePiece) || !seenNames.add(name)) {
+               continue;
+            }
+            double score = (scores != null ? scores[i] : getTokenScore(tokens[i]));
+            if (Double.isNaN(score)) {
+               if (scorer == null) {
+                  return null;
+               }
+               score = scorer.scoreNamePair(namePiece, name);
+            }
+            scoredNameList.add(new ScoredName(name, score));
+         }
+         scoredNames = scoredNameList.toArray(new ScoredName[scoredNameList.size()]);
+         Arrays.sort(scoredNames);
+         if (!pendingGenerations.containsKey(namePiece)) {
+            scoredNamesCache.put(namePiece, scoredNames);
+         }
+      }
+      return scoredNames;
+   }
+
+   /**
+    * Get additional tokens to search, most-similar first, limited to a budget
+    * The codes, the basename, and prefixed names are always included; similar names are added in order of decreasing score
+    * (similar names of the basename are scored against the basename) as long as they score at least minScore
+    * and the budget has not been reached.
+    * Under index-time expansion there are no similar names to rank, so this returns the same tokens as getAdditionalSearchTokens.
+    * Similar names that can't be scored (no precomputed scores and no scorer set; see canScoreSimilarNames) follow
+    * the scored ones in table order, without the minScore filter.
+    * @param namePiece normalized name piece
+    * @param maxTokens maximum number of tokens to return; the required tokens are returned even if they exceed it
+    * @param minScore minimum similar-name score; pass Double.NEGATIVE_INFINITY to rank without filtering
+    * @return tokens to search in addition to the namePiece, in order
+    */
+   public List<String> getAdditionalSearchTokens(String namePiece, int maxTokens, double minScore) {
+      Set<String> tokens = new LinkedHashSet<String>();
+      if (expansionMode == ExpansionMode.INDEX_TIME) {
+         tokens.addAll(getAdditionalSearchTokens(namePiece));
+         return new ArrayList<String>(tokens);
+      }
+
+      // required tokens: codes and basename tokens
+      List<ScoredName> scoredNames = new ArrayList<ScoredName>();
+      List<String> unscoredNames = new ArrayList<String>();
+      addSearchTokens(namePiece, tokens, false, true, false);
+      addSimilarNamesToRank(namePiece, scoredNames, unscoredNames);
+      if (isSurname) {
+         String basename = getBasename(namePiece);
+         if (basename != null) {
+            addSearchTokens(basename, tokens, true, true, false);
+            addSimilarNamesToRank(basename, scoredNames, unscoredNames);
+         }
+         else {
+            Collection<String> prefixedNames = getPrefixedNames(namePiece);
+            if (prefixedNames != null) {
+               tokens.addAll(prefixedNames);
+            }
+         }
+      }
+      tokens.remove(namePiece);
+
+      // fill the rest of the budget with the highest-scoring similar names
+      Collections.sort(scoredNames);
+      for (ScoredName scoredName : scoredNames) {
+         if (tokens.size() >= maxTokens || scoredName.getScore() < minScore) {
+            break;
+         }
+         if (!scoredName.getName().equals(namePiece)) {
+            tokens.add(scoredName.getName());
+         }
+      }
+      for (String name : unscoredNames) {
+         if (tokens.size() >= maxTokens) {
+            break;
+         }
+         if (!name.equals(namePiece)) {
+            tokens.add(name);
+         }
+      }
+
+      return new ArrayList<String>(tokens);
+   }
+
+   // add the similar names of a name piece to scoredNames, or in table order to unscoredNames if they can't be scored
+   private void addSimilarNamesToRank(String namePiece, List<ScoredName> scoredNames, List<String> unscoredNames) {
+      ScoredName[] names = scoreSimilarNames(namePiece);
+      if (names != null) {
+         Collections.addAll(scoredNames, names);
+      }
+      else {
+         for (String token : getSimilarNameTokens(namePiece)) {
+            unscoredNames.add(getTokenName(token));
+         }
+      }
+   }
+
+   // build the trie over all known names the first time it's needed
+   private synchronized NameTrie getNameTrie() {
+      if (nameTrie == null) {
+         Set<String> names = new TreeSet<String>(commonNames);
+         if (similarNames != null) {
+            names.addAll(similarNames.keySet());
+         }
+         if (prefixed2base != null) {
+            names.addAll(prefixed2base.keySet());
+            names.addAll(base2prefixed.keySet());
+         }
+         nameTrie = new NameTrie(new ArrayList<String>(names));
+      }
+      return nameTrie;
+   }
+
+   /**
+    * Return the known names matching a wildcard pattern, such as sm?th*, in sorted order
+    * Known names are the common names, the names in the similar names table, and prefixed surnames and their bases.
+    * Normalize the user-entered pattern with Normalizer.normalize(pattern, isSurname, true) first to keep the wildcards
+    * @param pattern normalized name piece, where ? matches any one letter and * matches any number of letters
+    * @param maxNames return at most this many names
+    * @return matching names
+    * @throws IllegalArgumentException if the pattern contains characters other than a-z, ?, and *, or is too long
+    */
+   public List<String> getMatchingNames(String pattern, int maxNames) {
+      NameTrie trie = nameTrie;
+      if (trie == null) {
+         trie = getNameTrie();
+      }
+      return trie.match(pattern, maxNames);
+   }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+import java.util.*;
+
+/**
+ * Compare two versions of the tables to find the names whose index tokens or search tokens changed,
+ * so only the records containing those names need to be reindexed.
+ * Create the two searchers using Searcher.newInstance, passing each version's basenames for surnames,
+ * and set both to the same expansion mode.
+ *
+ * Only the names in either version of the tables can change their tokens.  Names that are in neither version
+ * (rare names) keep their index tokens, but their search tokens change when the common names for their code change,
+ * so those codes are reported separately.  A rare prefixed surname's search tokens also change when its
+ * (reported) probable base changes.
+ */
+public class SearcherDiff {
+   /**
+    * Receives the differences as they are found; names are reported in sorted order
+    */
+   public interface Listener {
+      /**
+       * The tokens to index for this name changed; records containing this name need to be reindexed
+       */
+      public void indexTokensChanged(String name, Collection<String> oldTokens, Collection<String> newTokens);
+
+      /**
+       * The tokens to search for this name changed
+       */
+      public void searchTokensChanged(String name, Collection<String> oldTokens, Collection<String> newTokens);
+
+      /**
+       * The common names for this code changed, so searches for names not in the tables having this code changed
+       */
+      public void codeNamesChanged(String code);
+   }
+
+   private final Searcher oldSearcher;
+   private final Searcher newSearcher;
+
+   public SearcherDiff(Searcher oldSearcher, Searcher newSearcher) {
+      if (oldSearcher.getSimilarNamesMap() == null || newSearcher.getSimilarNamesMap() == null) {
+         throw new IllegalArgumentException("Both searchers must read their similar names into memory");
+      }
+      if (oldSearcher.getExpansionMode() != newSearcher.getExpansionMode()) {
+         throw new IllegalArgumentException("Both searchers must use the same expansion mode");
+      }
+      this.oldSearcher = oldSearcher;
+      this.newSearcher = newSearcher;
+   }
+
+   private static void addNames(Searcher searcher, Set<String> names) {
+      names.addAll(searcher.getCommonNames());
+      for (Map.Entry<String,String[]> entry : searcher.getSimilarNamesMap().entrySet()) {
+         names.add(entry.getKey());
+         // similar names are index tokens for each other under index-time expansion
+         Collections.addAll(names, entry.getValue());
+      }
+      // prefixed surnames search for their basename, and basenames for their prefixed surnames
+      for (String prefixedName : searcher.getPrefixedSurnames()) {
+         names.add(prefixedName);
+         names.add(searcher.getBasename(prefixedName));
+      }
+   }
+
+   private static boolean sameTokens(Collection<String> oldTokens, Collection<String> newTokens) {
+      return oldTokens.size() == newTokens.size() && oldTokens.containsAll(newTokens);
+   }
+
+   private static boolean sameNames(String[] oldNames, String[] newNames) {
+      if (oldNames == null || newNames == null) {
+         return oldNames == newNames;
+      }
+      return sameTokens(new HashSet<String>(Arrays.asList(oldNames)), Arrays.asList(newNames));
+   }
+
+   /**
+    * Report all differences to the listener
+    * @param listener listener
+    */
+   public void diff(Listener listener) {
+      // codes first, so a caller can start on the broadest changes
+      Set<String> codes = new TreeSet<String>(oldSearcher.getCodeMap().keySet());
+      codes.addAll(newSearcher.getCodeMap().keySet());
+      for (String code : codes) {
+         if (!sameNames(oldSearcher.getCodeMap().get(code), newSearcher.getCodeMap().get(code))) {
+            listener.codeNamesChanged(code);
+         }
+      }
+
+      Set<String> names = new TreeSet<String>();
+      addNames(oldSearcher, names);
+      addNames(newSearcher, names);
+      for (String name : names) {
+         Collection<String> oldTokens = oldSearcher.getAdditionalIndexTokens(name);
+         Collection<String> newTokens = newSearcher.getAdditionalIndexTokens(name);
+         if (!sameTokens(oldTokens, newTokens)) {
+            listener.indexTokensChanged(name, oldTokens, newTokens);
+         }
+         oldTokens = oldSearcher.getAdditionalSearchTokens(name);
+         newTokens = newSearcher.getAdditionalSearchTokens(name);
+         if (!sameTokens(oldTokens, newTokens)) {
+            listener.searchTokensChanged(name, oldTokens, newTokens);
+         }
+      }
+   }
+}
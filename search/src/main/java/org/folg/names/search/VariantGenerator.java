@@ -0,0 +1,31 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.folg.names.search;
+
+/**
+ * Generates similar names for a name piece that isn't in the similar names table
+ * The search module doesn't depend upon the score module, so SimilarNameGenerator implements this interface
+ * and can be passed to Searcher.setVariantGenerator
+ */
+public interface VariantGenerator {
+   /**
+    * Generate names similar to a name piece
+    * @param namePiece normalized name piece
+    * @return similar names, most-similar first
+    */
+   public String[] generateSimilarNames(String namePiece);
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.folg.names.search;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class ExpansionPlannerTest extends TestCase {
+   public ExpansionPlannerTest(String name) {
+      super(name);
+   }
+
+   private static final String[] COMMON_NAMES = {"john", "jon", "johan", "jonathan"};
+
+   private static ExpansionPlanner newPlanner(Searcher searcher) throws Exception {
+      ExpansionPlanner planner = new ExpansionPlanner(searcher);
+      planner.readDocumentFrequencies(new StringReader("J500\t1000\njohn\t100\njon\t50\njohan\t30\nJ535\t25\njonathan\t20\n"));
+      return planner;
+   }
+
+   public void testPrecomputedScores() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, new String[] {"\"john\",\"jon:2.5 johan:1.5 jonathan:0.5\""}, COMMON_NAMES);
+      assertTrue(searcher.canScoreSimilarNames("john"));
+      ExpansionPlanner planner = newPlanner(searcher);
+
+      // the code doesn't fit, but the similar names do, highest-scoring first
+      ExpansionPlanner.Plan plan = planner.plan("john", 250);
+      assertEquals(Arrays.asList("jon", "johan", "jonathan"), plan.getTokens());
+      assertEquals(Arrays.asList("J500"), plan.getDroppedTokens());
+      assertEquals(200, plan.getEstimatedPostings());
+
+      // a tighter target keeps the similar names that still fit
+      plan = planner.plan("john", 175);
+      assertEquals(Arrays.asList("jon", "jonathan"), plan.getTokens());
+      assertEquals(Arrays.asList("J500", "johan"), plan.getDroppedTokens());
+      assertEquals(170, plan.getEstimatedPostings());
+
+      // the code is kept when it fits
+      plan = planner.plan("john", 2000);
+      assertEquals(Arrays.asList("J500", "jon", "johan", "jonathan"), plan.getTokens());
+      assertEquals(1200, plan.getEstimatedPostings());
+   }
+
+   public void testUnscored() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, new String[] {"\"john\",\"jon johan jonathan\""}, COMMON_NAMES);
+      assertFalse(searcher.canScoreSimilarNames("john"));
+      ExpansionPlanner planner = newPlanner(searcher);
+
+      // without scores the similar names are taken least-frequent first
+      ExpansionPlanner.Plan plan = planner.plan("john", 175);
+      assertEquals(Arrays.asList("jonathan", "johan"), plan.getTokens());
+      assertEquals(Arrays.asList("J500", "jon"), plan.getDroppedTokens());
+
+      // with a scorer they're ranked by score again
+      searcher.setNamePairScorer(new NamePairScorer() {
+         public double scoreNamePair(String namePiece1, String namePiece2) {
+            return (namePiece2.equals("jon") ? 3 : namePiece2.equals("johan") ? 2 : 1);
+         }
+      });
+      assertTrue(searcher.canScoreSimilarNames("john"));
+      plan = planner.plan("john", 175);
+      assertEquals(Arrays.asList("jon", "jonathan"), plan.getTokens());
+      assertEquals(Arrays.asList("J500", "johan"), plan.getDroppedTokens());
+   }
+
+   public void testConcurrentUpdates() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, new String[] {"\"john\",\"jon:2.5 johan:1.5 jonathan:0.5\""}, COMMON_NAMES);
+      final ExpansionPlanner planner = newPlanner(searcher);
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new Thread() {
+            public void run() {
+               for (int j = 0; j < 1000; j++) {
+                  planner.addDocumentFrequency("jonathan", 1);
+                  planner.addDocumentFrequency("jimmy", 1);
+               }
+            }
+         };
+         threads[i].start();
+      }
+      // plan while the frequencies change
+      for (int i = 0; i < 100; i++) {
+         planner.plan("john", 250);
+      }
+      for (Thread thread : threads) {
+         thread.join();
+      }
+      assertEquals(4020, planner.getDocumentFrequency("jonathan"));
+      // a token without a frequency counts up from 0
+      assertEquals(4000, planner.getDocumentFrequency("jimmy"));
+
+      ExpansionPlanner.Plan plan = planner.plan("john", 250);
+      assertEquals(Arrays.asList("jon", "johan"), plan.getTokens());
+      assertEquals(Arrays.asList("J500", "jonathan"), plan.getDroppedTokens());
+   }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.folg.names.search;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+public class NameTrieTest extends TestCase {
+   public NameTrieTest(String name) {
+      super(name);
+   }
+
+   // the names matching the pattern, found with a regular expression
+   private static List<String> match(List<String> sortedNames, String pattern, int maxNames) {
+      Pattern regex = Pattern.compile(pattern.replace("?", "[a-z]").replace("*", "[a-z]*"));
+      List<String> names = new ArrayList<String>();
+      for (String name : sortedNames) {
+         if (names.size() < maxNames && regex.matcher(name).matches()) {
+            names.add(name);
+         }
+      }
+      return names;
+   }
+
+   public void testMatch() {
+      List<String> names = Arrays.asList("smith", "smithe", "smithson", "smyth", "schmidt", "goldsmith", "smit");
+      NameTrie trie = new NameTrie(new ArrayList<String>(new TreeSet<String>(names)));
+      // trailing
+      assertEquals(Arrays.asList("smit", "smith", "smithe", "smithson"), trie.match("smit*", 10));
+      // leading
+      assertEquals(Arrays.asList("goldsmith", "smith"), trie.match("*smith", 10));
+      // middle
+      assertEquals(Arrays.asList("smith", "smyth"), trie.match("sm?th", 10));
+      assertEquals(Arrays.asList("schmidt", "smit"), trie.match("s*t", 10));
+      assertEquals(Arrays.asList("goldsmith", "smith", "smithe", "smithson", "smyth"), trie.match("*th*", 10));
+      // limited
+      assertEquals(Arrays.asList("smit", "smith"), trie.match("smit*", 2));
+      assertEquals(0, trie.match("smit*", 0).size());
+      // exact
+      assertEquals(Arrays.asList("smith"), trie.match("smith", 10));
+      assertEquals(0, trie.match("smi", 10).size());
+      assertEquals(0, trie.match("", 10).size());
+   }
+
+   public void testInvalidPatterns() {
+      NameTrie trie = new NameTrie(Arrays.asList("smith"));
+      try {
+         trie.match("Smith", 10);
+         fail("Matched an upper-case pattern");
+      }
+      catch (IllegalArgumentException e) {
+         // expected
+      }
+      char[] stars = new char[NameTrie.MAX_PATTERN_LENGTH + 1];
+      Arrays.fill(stars, '*');
+      try {
+         trie.match(new String(stars), 10);
+         fail("Matched a pattern that was too long");
+      }
+      catch (IllegalArgumentException e) {
+         // expected
+      }
+   }
+
+   public void testRandom() {
+      Random random = new Random(11);
+      for (int trial = 0; trial < 50; trial++) {
+         // names over a few letters share prefixes often
+         TreeSet<String> nameSet = new TreeSet<String>();
+         int numNames = 1 + random.nextInt(200);
+         for (int i = 0; i < numNames; i++) {
+            nameSet.add(randomString(random, 1 + random.nextInt(8), "abc"));
+         }
+         List<String> names = new ArrayList<String>(nameSet);
+         NameTrie trie = new NameTrie(names);
+         for (int i = 0; i < 200; i++) {
+            String pattern = randomString(random, random.nextInt(7), "abc??**");
+            int maxNames = (random.nextInt(4) == 0 ? random.nextInt(5) : Integer.MAX_VALUE);
+            assertEquals(pattern, match(names, pattern, maxNames), trie.match(pattern, maxNames));
+         }
+      }
+   }
+
+   private static String randomString(Random random, int length, String letters) {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+         chars[i] = letters.charAt(random.nextInt(letters.length()));
+      }
+      return new String(chars);
+   }
+}
@@ -29,4 +29,15 @@ public class NormalizerTest extends TestCase {
       assertEquals("olson", Utils.join(normalizer.normalize("Olsdatter", true)));
       assertEquals("alberte", Utils.join(normalizer.normalize("Alberte{1}", false)));
    }
+
+   public void testWildcards() throws Exception {
+      Normalizer normalizer = Normalizer.getInstance();
+      assertEquals("sm?th*", Utils.join(normalizer.normalize("Sm?th*", true, true)));
+      assertEquals("*son", Utils.join(normalizer.normalize("*son", true, true)));
+      assertEquals("j?n", Utils.join(normalizer.normalize("J?n", false, true)));
+      // without wildcards they're removed like other punctuation
+      assertEquals("smth", Utils.join(normalizer.normalize("Sm?th*", true, false)));
+      assertEquals("smth", Utils.join(normalizer.normalize("Sm?th*", true)));
+      assertEquals("son", Utils.join(normalizer.normalize("*son", true)));
+   }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.folg.names.search;
+
+import junit.framework.TestCase;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+public class PrefixTrieTest extends TestCase {
+   public PrefixTrieTest(String name) {
+      super(name);
+   }
+
+   // the first prefix in list order that the name starts with
+   private static int match(List<String> prefixes, String name, int minRemaining) {
+      for (String prefix : prefixes) {
+         if (prefix.length() > 0 && name.startsWith(prefix) && name.length() - prefix.length() >= minRemaining) {
+            return prefix.length();
+         }
+      }
+      return -1;
+   }
+
+   public void testMatch() {
+      // longer prefixes listed first win over the shorter prefixes they start with
+      PrefixTrie trie = new PrefixTrie(Arrays.asList("della", "dell", "de", "mac", "mc"));
+      assertEquals(5, trie.match("dellarosa", 2));
+      assertEquals(4, trie.match("dellorto", 2));
+      assertEquals(2, trie.match("delaney", 2));
+      assertEquals(3, trie.match("macdonald", 2));
+      assertEquals(-1, trie.match("mdonald", 2));
+      // the longest prefix must leave enough characters
+      assertEquals(4, trie.match("dellan", 2));
+      assertEquals(2, trie.match("della", 2));
+      assertEquals(5, trie.match("della", 0));
+      assertEquals(-1, trie.match("de", 1));
+      assertEquals(-1, trie.match("Della", 0));
+
+      // a shorter prefix listed first wins
+      trie = new PrefixTrie(Arrays.asList("de", "della"));
+      assertEquals(2, trie.match("dellarosa", 2));
+      trie = new PrefixTrie(Arrays.asList("dell", "della", "dell"));
+      assertEquals(4, trie.match("dellarosa", 2));
+   }
+
+   public void testSurnamePrefixes() throws Exception {
+      Properties props = new Properties();
+      props.load(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("searcher.properties"), "UTF8"));
+      List<String> prefixes = Arrays.asList(props.getProperty("surnameProbablePrefixList").split(","));
+      PrefixTrie trie = new PrefixTrie(prefixes);
+      for (String prefix : prefixes) {
+         for (String suffix : new String[] {"", "a", "ab", "abcdef"}) {
+            String name = prefix + suffix;
+            for (int minRemaining = 0; minRemaining <= 3; minRemaining++) {
+               assertEquals(name, match(prefixes, name, minRemaining), trie.match(name, minRemaining));
+            }
+         }
+      }
+   }
+
+   public void testRandom() {
+      Random random = new Random(7);
+      for (int trial = 0; trial < 200; trial++) {
+         // prefixes over a few letters share their beginnings often
+         List<String> prefixes = new ArrayList<String>();
+         int numPrefixes = 1 + random.nextInt(20);
+         for (int i = 0; i < numPrefixes; i++) {
+            prefixes.add(randomString(random, 1 + random.nextInt(5)));
+         }
+         PrefixTrie trie = new PrefixTrie(prefixes);
+         for (int i = 0; i < 100; i++) {
+            String name = randomString(random, random.nextInt(9));
+            int minRemaining = random.nextInt(3);
+            assertEquals(prefixes + " " + name, match(prefixes, name, minRemaining), trie.match(name, minRemaining));
+         }
+      }
+   }
+
+   private static String randomString(Random random, int length) {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+         chars[i] = (char)('a' + random.nextInt(3));
+      }
+      return new String(chars);
+   }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011 Foundation for On-Line Genealogy, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.folg.names.search;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+public class SearcherDiffTest extends TestCase {
+   public SearcherDiffTest(String name) {
+      super(name);
+   }
+
+   private static class RecordingListener implements SearcherDiff.Listener {
+      private final List<String> changes = new ArrayList<String>();
+
+      public void indexTokensChanged(String name, Collection<String> oldTokens, Collection<String> newTokens) {
+         changes.add("index "+name+" ["+Utils.join(new TreeSet<String>(oldTokens))+"] ["+Utils.join(new TreeSet<String>(newTokens))+"]");
+      }
+
+      public void searchTokensChanged(String name, Collection<String> oldTokens, Collection<String> newTokens) {
+         changes.add("search "+name+" ["+Utils.join(new TreeSet<String>(oldTokens))+"] ["+Utils.join(new TreeSet<String>(newTokens))+"]");
+      }
+
+      public void codeNamesChanged(String code) {
+         changes.add("code "+code);
+      }
+   }
+
+   // marie becomes common, and john gets another similar name
+   private static Searcher newOldSearcher() throws Exception {
+      return Utils.newSearcher(false, new String[] {
+            "\"john\",\"jon johan\"",
+            "\"jon\",\"john\"",
+            "\"mary\",\"marie\"",
+            "\"marie\",\"mary\"",
+         }, "john", "jon", "mary");
+   }
+
+   private static Searcher newNewSearcher() throws Exception {
+      return Utils.newSearcher(false, new String[] {
+            "\"john\",\"jon johan johann\"",
+            "\"jon\",\"john\"",
+            "\"mary\",\"marie\"",
+            "\"marie\",\"mary\"",
+         }, "john", "jon", "mary", "marie");
+   }
+
+   public void testSearchTime() throws Exception {
+      RecordingListener listener = new RecordingListener();
+      new SearcherDiff(newOldSearcher(), newNewSearcher()).diff(listener);
+      assertEquals(Arrays.asList(
+            "code M600",
+            "search john [J500 johan jon] [J500 johan johann jon]",
+            "index marie [M600] []"),
+         listener.changes);
+   }
+
+   public void testIndexTime() throws Exception {
+      Searcher oldSearcher = newOldSearcher();
+      Searcher newSearcher = newNewSearcher();
+      oldSearcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+      newSearcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+      RecordingListener listener = new RecordingListener();
+      new SearcherDiff(oldSearcher, newSearcher).diff(listener);
+      assertEquals(Arrays.asList(
+            "code M600",
+            "index johann [J500] [J500 john]",
+            "index marie [M600 mary] [0M600 mary]"),
+         listener.changes);
+   }
+
+   // macwilliams is added to the basenames of williams
+   private static Searcher newSurnameSearcher(String williamsPrefixedNames) throws Exception {
+      return Utils.newSurnameSearcher(new String[] {
+            "\"williams\",\"willams\"",
+            "\"willams\",\"williams\"",
+         }, new String[] {
+            "williams: "+williamsPrefixedNames,
+         }, "williams", "willams");
+   }
+
+   public void testBasenames() throws Exception {
+      RecordingListener listener = new RecordingListener();
+      new SearcherDiff(newSurnameSearcher("mcwilliams"), newSurnameSearcher("mcwilliams macwilliams")).diff(listener);
+      assertEquals(Arrays.asList(
+            "search williams [W452 mcwilliams willams] [W452 macwilliams mcwilliams willams]"),
+         listener.changes);
+   }
+
+   public void testDifferentModes() throws Exception {
+      Searcher newSearcher = newNewSearcher();
+      newSearcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+      try {
+         new SearcherDiff(newOldSearcher(), newSearcher);
+         fail("Compared searchers with different expansion modes");
+      }
+      catch (IllegalArgumentException e) {
+         // expected
+      }
+   }
+}
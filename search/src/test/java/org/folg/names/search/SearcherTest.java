@@ -18,7 +18,16 @@ package org.folg.names.search;
 
 import junit.framework.TestCase;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SearcherTest extends TestCase {
    public SearcherTest(String name) {
@@ -44,4 +53,205 @@ public class SearcherTest extends TestCase {
                  "quates quatsie quatsy quessy quijas quish",
                  Utils.join(new TreeSet<String>(searcher.getAdditionalSearchTokens("quass"))));
    }
+
+   private static final String[] SIMILAR_NAMES = {
+      "\"john\",\"jon johan jonathan johnn\"",
+      "\"jon\",\"john\"",
+      "\"jonathan\",\"john jon\"",
+      "\"johan\",\"john\"",
+      "\"mary\",\"marie maria marye\"",
+      "\"marie\",\"mary\"",
+      "\"maria\",\"mary marie\"",
+      "\"mark\",\"marc\"",
+      "\"marcia\",\"marsha\"",
+      "\"william\",\"bill\"",
+      "\"wilma\",\"\"",
+   };
+   private static final String[] COMMON_NAMES = {
+      "john", "jon", "jonathan", "johan", "mary", "marie", "maria", "mark", "marcia", "william", "wilma"
+   };
+   private static final String[] RARE_NAMES = {
+      "johnn", "jonny", "marye", "marc", "marsha", "bill", "willma", "zed"
+   };
+
+   // a search engine that folds case, such as one with a lower-case filter
+   private static Set<String> fold(String name, Collection<String> tokens) {
+      Set<String> folded = new HashSet<String>();
+      folded.add(name.toLowerCase());
+      for (String token : tokens) {
+         folded.add(token.toLowerCase());
+      }
+      return folded;
+   }
+
+   // return query => document for each query that finds each document
+   private static Set<String> getMatches(Searcher searcher, List<String> names) {
+      Set<String> matches = new TreeSet<String>();
+      for (String query : names) {
+         Set<String> searchTokens = fold(query, searcher.getAdditionalSearchTokens(query));
+         for (String document : names) {
+            for (String indexToken : fold(document, searcher.getAdditionalIndexTokens(document))) {
+               if (searchTokens.contains(indexToken)) {
+                  matches.add(query + " => " + document);
+                  break;
+               }
+            }
+         }
+      }
+      return matches;
+   }
+
+   public void testExpansionModes() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, SIMILAR_NAMES, COMMON_NAMES);
+      List<String> names = new ArrayList<String>();
+      for (String name : COMMON_NAMES) {
+         names.add(name);
+      }
+      for (String name : RARE_NAMES) {
+         names.add(name);
+      }
+
+      assertEquals(Searcher.ExpansionMode.SEARCH_TIME, searcher.getExpansionMode());
+      Set<String> searchTimeMatches = getMatches(searcher, names);
+      searcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+      Set<String> indexTimeMatches = getMatches(searcher, names);
+      assertEquals(searchTimeMatches, indexTimeMatches);
+
+      // similar names, rare names sharing a code, and common names sharing the code of a name without similar names
+      assertTrue(indexTimeMatches.contains("jon => john"));
+      assertTrue(indexTimeMatches.contains("john => johnn"));
+      assertTrue(indexTimeMatches.contains("jonny => johan"));
+      assertTrue(indexTimeMatches.contains("willma => wilma"));
+      // mark and marcia share a code, but neither lists the other as similar
+      assertFalse(indexTimeMatches.contains("mark => marcia"));
+      assertFalse(indexTimeMatches.contains("zed => john"));
+
+      searcher.setExpansionMode(Searcher.ExpansionMode.SEARCH_TIME);
+      assertEquals(searchTimeMatches, getMatches(searcher, names));
+   }
+
+   public void testBudgetedSearchTokens() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, new String[] {
+            "\"john\",\"jonathan:0.5 jon:2.5 johnny:-1 johan:1.5\""
+         }, "john", "jon", "johan", "jonathan");
+      // the code first, then similar names highest-scoring first
+      assertEquals(Arrays.asList("J500", "jon", "johan", "jonathan", "johnny"),
+                   searcher.getAdditionalSearchTokens("john", 100, Double.NEGATIVE_INFINITY));
+      assertEquals(Arrays.asList("J500", "jon", "johan"), searcher.getAdditionalSearchTokens("john", 3, Double.NEGATIVE_INFINITY));
+      assertEquals(Arrays.asList("J500", "jon", "johan"), searcher.getAdditionalSearchTokens("john", 100, 1.0));
+      assertEquals(Arrays.asList("J500", "jon"), searcher.getAdditionalSearchTokens("john", 2, 1.0));
+      // the code is returned even if it exceeds the budget
+      assertEquals(Arrays.asList("J500"), searcher.getAdditionalSearchTokens("john", 0, Double.NEGATIVE_INFINITY));
+
+      // index-time expansion has nothing to rank
+      searcher.setExpansionMode(Searcher.ExpansionMode.INDEX_TIME);
+      assertEquals(new TreeSet<String>(searcher.getAdditionalSearchTokens("john")),
+                   new TreeSet<String>(searcher.getAdditionalSearchTokens("john", 1, Double.NEGATIVE_INFINITY)));
+   }
+
+   public void testBudgetedUnscoredSearchTokens() throws Exception {
+      // like the default tables: no precomputed scores, and no scorer set
+      Searcher searcher = Utils.newSearcher(false, new String[] {
+            "\"john\",\"jonathan jon:2.5 johan\""
+         }, "john", "jon", "johan", "jonathan");
+      assertFalse(searcher.canScoreSimilarNames("john"));
+      // similar names that can't be scored are returned in table order, without the score filter
+      assertEquals(Arrays.asList("J500", "jonathan", "jon", "johan"),
+                   searcher.getAdditionalSearchTokens("john", 100, Double.NEGATIVE_INFINITY));
+      assertEquals(Arrays.asList("J500", "jonathan", "jon"), searcher.getAdditionalSearchTokens("john", 3, 1.0));
+      // names for the code of a name that isn't in the table
+      assertEquals(Arrays.asList("J500", "john"), searcher.getAdditionalSearchTokens("jonny", 2, Double.NEGATIVE_INFINITY));
+   }
+
+   public void testBudgetedSurnameSearchTokens() throws Exception {
+      Searcher searcher = Utils.newSearcher(true, new String[] {
+            "\"williams\",\"willems:1 williamson:2\"",
+            "\"mcwilliams\",\"mcwilliam:3\"",
+         }, "williams", "mcwilliams");
+      searcher.readBasenames(new StringReader("williams: mcwilliams, fitzwilliams\n"));
+      // the codes and basename are always returned; then similar names of the name and its basename by score
+      assertEquals(Arrays.asList("M245", "williams", "W452", "mcwilliam", "williamson", "willems"),
+                   searcher.getAdditionalSearchTokens("mcwilliams", 100, Double.NEGATIVE_INFINITY));
+      assertEquals(Arrays.asList("M245", "williams", "W452", "mcwilliam"),
+                   searcher.getAdditionalSearchTokens("mcwilliams", 4, Double.NEGATIVE_INFINITY));
+      assertEquals(Arrays.asList("M245", "williams", "W452"),
+                   searcher.getAdditionalSearchTokens("mcwilliams", 1, Double.NEGATIVE_INFINITY));
+      // the prefixed forms of a basename are always returned
+      assertEquals(Arrays.asList("W452", "mcwilliams", "fitzwilliams", "williamson"),
+                   searcher.getAdditionalSearchTokens("williams", 4, Double.NEGATIVE_INFINITY));
+   }
+
+   public void testScoredSimilarNames() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, new String[] {
+            "\"john\",\"jon:2.5 johan jonathan:-0.75\"",
+            "\"jon\",\"john:2.5\"",
+         }, "john", "jon", "johan", "jonathan");
+      // scores are stripped from the tokens
+      assertEquals("johan jon jonathan", Utils.join(new TreeSet<String>(searcher.getSimilarNames("john"))));
+      assertEquals("J500 johan jon jonathan", Utils.join(new TreeSet<String>(searcher.getAdditionalSearchTokens("john"))));
+
+      // and parsed
+      assertEquals("[john:2.5]", Arrays.toString(searcher.getScoredSimilarNames("jon")));
+      assertFalse(searcher.canScoreSimilarNames("john"));
+      try {
+         searcher.getScoredSimilarNames("john");
+         fail("Scored a similar name without a score or a scorer");
+      }
+      catch (IllegalStateException e) {
+         // expected
+      }
+
+      // the scorer fills in only the missing scores
+      searcher.setNamePairScorer(new NamePairScorer() {
+         public double scoreNamePair(String namePiece1, String namePiece2) {
+            return namePiece2.length();
+         }
+      });
+      assertEquals("[johan:5.0, jon:2.5, jonathan:-0.75]", Arrays.toString(searcher.getScoredSimilarNames("john")));
+      // names for the code of a name that isn't in the table are all scored by the scorer
+      assertEquals("[johan:5.0, john:4.0, jon:3.0]", Arrays.toString(searcher.getScoredSimilarNames("jonny")));
+   }
+
+   public void testGeneratedNames() throws Exception {
+      Searcher searcher = Utils.newSearcher(false, new String[] {"\"john\",\"jon johan\""}, "john", "jon", "johan");
+      final CountDownLatch generate = new CountDownLatch(1);
+      final AtomicInteger generations = new AtomicInteger();
+      searcher.setVariantGenerator(new VariantGenerator() {
+         public String[] generateSimilarNames(String namePiece) {
+            generations.incrementAndGet();
+            try {
+               generate.await();
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            return new String[] {"jonnie", "johnny"};
+         }
+      }, 10);
+
+      // until the names are generated, searches fall back to the names for the code
+      assertEquals("johan john jon", Utils.join(new TreeSet<String>(searcher.getSimilarNames("jonny"))));
+      // and share the generation in progress
+      assertEquals("johan john jon", Utils.join(new TreeSet<String>(searcher.getSimilarNames("jonny"))));
+      assertEquals(1, generations.get());
+
+      // once the names are generated in the background, later searches get them
+      generate.countDown();
+      String similarNames = null;
+      for (int i = 0; i < 500; i++) {
+         similarNames = Utils.join(new TreeSet<String>(searcher.getSimilarNames("jonny")));
+         if (!similarNames.equals("johan john jon")) {
+            break;
+         }
+         Thread.sleep(10);
+      }
+      assertEquals("johnny jonnie", similarNames);
+      assertEquals("J500 johnny jonnie", Utils.join(new TreeSet<String>(searcher.getAdditionalSearchTokens("jonny"))));
+      // from the cache
+      assertEquals(1, generations.get());
+
+      // names in the table aren't generated
+      assertEquals("johan jon", Utils.join(new TreeSet<String>(searcher.getSimilarNames("john"))));
+      assertEquals(1, generations.get());
+   }
 }
@@ -16,7 +16,13 @@
 
 package org.folg.names.search;
 
+import org.apache.commons.codec.language.Soundex;
+
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class Utils {
    public static String join(Collection<String> c) {
@@ -30,4 +36,60 @@ public class Utils {
       return buf.toString();
    }
 
+   /**
+    * Create a searcher over small in-memory tables
+    * @param isSurname true for surnames
+    * @param similarNames lines of the similar names file; e.g., "john","jon jonathan"
+    * @param commonNames common names; the code map lists each one under its soundex code
+    * @return searcher
+    * @throws IOException never
+    */
+   public static Searcher newSearcher(boolean isSurname, String[] similarNames, String... commonNames) throws IOException {
+      return createSearcher(isSurname, similarNames, null, commonNames);
+   }
+
+   /**
+    * Create a surname searcher over small in-memory tables
+    * @param similarNames lines of the similar names file; e.g., "williams","willams"
+    * @param basenames lines of the basenames file; e.g., williams: mcwilliams
+    * @param commonNames common names; the code map lists each one under its soundex code
+    * @return searcher
+    * @throws IOException never
+    */
+   public static Searcher newSurnameSearcher(String[] similarNames, String[] basenames, String... commonNames) throws IOException {
+      return createSearcher(true, similarNames, basenames, commonNames);
+   }
+
+   private static Searcher createSearcher(boolean isSurname, String[] similarNames, String[] basenames, String[] commonNames) throws IOException {
+      StringBuilder similarNamesBuf = new StringBuilder();
+      for (String line : similarNames) {
+         similarNamesBuf.append(line).append('\n');
+      }
+      Soundex soundex = new Soundex();
+      Map<String,StringBuilder> codeNames = new TreeMap<String,StringBuilder>();
+      for (String name : commonNames) {
+         String code = soundex.encode(name);
+         StringBuilder names = codeNames.get(code);
+         if (names == null) {
+            codeNames.put(code, new StringBuilder(name));
+         }
+         else {
+            names.append(", ").append(name);
+         }
+      }
+      StringBuilder codeMapBuf = new StringBuilder();
+      for (Map.Entry<String,StringBuilder> entry : codeNames.entrySet()) {
+         codeMapBuf.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+      }
+      StringReader basenamesReader = null;
+      if (basenames != null) {
+         StringBuilder basenamesBuf = new StringBuilder();
+         for (String line : basenames) {
+            basenamesBuf.append(line).append('\n');
+         }
+         basenamesReader = new StringReader(basenamesBuf.toString());
+      }
+      return Searcher.newInstance(isSurname, new StringReader(similarNamesBuf.toString()), new StringReader(codeMapBuf.toString()),
+                                  basenamesReader);
+   }
 }